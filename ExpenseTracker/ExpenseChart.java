@@ -0,0 +1,210 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import expense.*;
+
+// Expense summary chart. The rendered chart is kept in an image and only
+// redrawn when the store changes, the filter or view changes, or the panel is
+// resized; other repaints (scrolling, window moves) just blit the image.
+public class ExpenseChart extends JPanel {
+    public enum View {
+        BAR("Bar"), LINE("Line"), STACKED("Stacked");
+
+        private final String label;
+
+        View(String label) {
+            this.label = label;
+        }
+
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final Color[] COLORS = { new Color(76, 175, 80), new Color(33, 150, 243),
+            new Color(255, 152, 0), new Color(156, 39, 176), new Color(120, 144, 156) };
+
+    private final ExpenseStore store;
+    private final String[] categories;
+    private View view = View.BAR;
+    private int categoryId = -1, fromDay = Integer.MIN_VALUE, toDay = Integer.MAX_VALUE;
+
+    private BufferedImage cache;
+    private long cachedVersion = -1;
+    private boolean dirty = true;
+
+    public ExpenseChart(ExpenseStore store, String[] categories) {
+        this.store = store;
+        this.categories = categories;
+    }
+
+    // categoryId < 0 means all; days are an inclusive epoch-day range
+    public void setFilter(int categoryId, int fromDay, int toDay) {
+        this.categoryId = categoryId;
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+        dirty = true;
+        repaint();
+    }
+
+    public void setView(View view) {
+        this.view = view;
+        dirty = true;
+        repaint();
+    }
+
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        int w = getWidth(), h = getHeight();
+        if (w <= 0 || h <= 0)
+            return;
+        if (cache == null || cache.getWidth() != w || cache.getHeight() != h || dirty
+                || cachedVersion != store.version()) {
+            render(w, h);
+        }
+        g.drawImage(cache, 0, 0, null);
+    }
+
+    private void render(int w, int h) {
+        if (cache == null || cache.getWidth() != w || cache.getHeight() != h) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            cache = gc != null ? gc.createCompatibleImage(w, h, Transparency.TRANSLUCENT)
+                    : new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g = cache.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, w, h);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setFont(getFont());
+            Insets in = getInsets();
+            Rectangle area = new Rectangle(in.left + 10, in.top + 20, w - in.left - in.right - 20,
+                    h - in.top - in.bottom - 50);
+            if (view == View.BAR)
+                drawBars(g, area);
+            else
+                drawMonthly(g, area);
+        } finally {
+            g.dispose();
+        }
+        cachedVersion = store.version();
+        dirty = false;
+    }
+
+    private void drawBars(Graphics2D g, Rectangle area) {
+        double[] totals = store.totalsByCategory(categoryId, fromDay, toDay, categories.length, null);
+        double max = 1.0;
+        for (int i = 0; i < categories.length; i++)
+            max = Math.max(max, totals[i]);
+
+        int step = area.width / categories.length, barWidth = Math.max(4, step * 2 / 3);
+        int baseline = area.y + area.height;
+        int x = area.x;
+        for (int i = 0; i < categories.length; i++) {
+            int height = (int) ((totals[i] / max) * (area.height - 20));
+            g.setColor(Color.GREEN);
+            g.fillRect(x, baseline - height, barWidth, height);
+            g.setColor(Color.BLACK);
+            g.drawString(categories[i], x, baseline + 20);
+            g.drawString("₹" + (int) totals[i], x, baseline - height - 10);
+            x += step;
+        }
+    }
+
+    // Line and stacked views: one point or bar per month in the filtered range
+    private void drawMonthly(Graphics2D g, Rectangle area) {
+        ExpenseRollup rollup = store.rollup();
+        g.setColor(Color.BLACK);
+        if (rollup.isEmpty()) {
+            g.drawString("No expenses", area.x, area.y + area.height / 2);
+            return;
+        }
+        int firstMonth = Math.max(rollup.firstYearMonth(), monthOf(fromDay, rollup.firstYearMonth()));
+        int lastMonth = Math.min(rollup.lastYearMonth(), monthOf(toDay, rollup.lastYearMonth()));
+        int months = lastMonth - firstMonth + 1;
+        if (months <= 0) {
+            g.drawString("No expenses", area.x, area.y + area.height / 2);
+            return;
+        }
+
+        double[][] series = new double[months][];
+        double max = 1.0;
+        for (int m = 0; m < months; m++) {
+            int ym = firstMonth + m;
+            int from = Math.max(fromDay, ExpenseStore.firstDayOf(ym));
+            int to = Math.min(toDay, ExpenseStore.firstDayOf(ym + 1) - 1);
+            series[m] = store.totalsByCategory(categoryId, from, to, categories.length, null);
+            if (view == View.STACKED) {
+                double sum = 0;
+                for (double v : series[m])
+                    sum += v;
+                max = Math.max(max, sum);
+            } else {
+                for (double v : series[m])
+                    max = Math.max(max, v);
+            }
+        }
+
+        int baseline = area.y + area.height - 20;
+        int plotHeight = area.height - 40;
+        double step = (double) area.width / months;
+        if (view == View.STACKED) {
+            int barWidth = Math.max(1, (int) (step * 0.8));
+            for (int m = 0; m < months; m++) {
+                int x = area.x + (int) (m * step);
+                int top = baseline;
+                for (int c = 0; c < categories.length; c++) {
+                    int height = (int) (series[m][c] / max * plotHeight);
+                    g.setColor(COLORS[c % COLORS.length]);
+                    g.fillRect(x, top - height, barWidth, height);
+                    top -= height;
+                }
+            }
+        } else {
+            for (int c = 0; c < categories.length; c++) {
+                if (categoryId >= 0 && c != categoryId)
+                    continue;
+                g.setColor(COLORS[c % COLORS.length]);
+                int px = -1, py = -1;
+                for (int m = 0; m < months; m++) {
+                    int x = area.x + (int) (m * step + step / 2);
+                    int y = baseline - (int) (series[m][c] / max * plotHeight);
+                    if (px >= 0)
+                        g.drawLine(px, py, x, y);
+                    else if (months == 1)
+                        g.fillOval(x - 2, y - 2, 5, 5);
+                    px = x;
+                    py = y;
+                }
+            }
+        }
+
+        g.setColor(Color.BLACK);
+        g.drawLine(area.x, baseline, area.x + area.width, baseline);
+        g.drawString(monthLabel(firstMonth), area.x, baseline + 15);
+        if (months > 1) {
+            String last = monthLabel(lastMonth);
+            g.drawString(last, area.x + area.width - g.getFontMetrics().stringWidth(last), baseline + 15);
+        }
+        g.drawString("max ₹" + (int) max, area.x, area.y);
+
+        // Legend
+        int x = area.x;
+        for (int c = 0; c < categories.length; c++) {
+            g.setColor(COLORS[c % COLORS.length]);
+            g.fillRect(x, baseline + 22, 8, 8);
+            g.setColor(Color.BLACK);
+            g.drawString(categories[c].substring(0, Math.min(4, categories[c].length())), x + 10, baseline + 30);
+            x += 50;
+        }
+    }
+
+    private static int monthOf(int day, int fallback) {
+        return day == Integer.MIN_VALUE || day == Integer.MAX_VALUE ? fallback : ExpenseStore.yearMonthOf(day);
+    }
+
+    private static String monthLabel(int yearMonth) {
+        return String.format("%04d-%02d", Math.floorDiv(yearMonth, 12), Math.floorMod(yearMonth, 12) + 1);
+    }
+}
@@ -0,0 +1,53 @@
+import javax.swing.table.AbstractTableModel;
+import expense.*;
+
+// Read-only table view over an ExpenseStore. Rows are an index array into the
+// store, so filtering swaps one int[] and fires a single change event.
+public class ExpenseTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = { "Amount", "Date", "Category" };
+
+    private final ExpenseStore store;
+    private int[] rows = new int[0];
+
+    public ExpenseTableModel(ExpenseStore store) {
+        this.store = store;
+    }
+
+    public void setRows(int[] rows) {
+        this.rows = rows;
+        fireTableDataChanged();
+    }
+
+    // Store position of a view row
+    public int storeRow(int viewRow) {
+        return rows[viewRow];
+    }
+
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    public String getColumnName(int col) {
+        return COLUMNS[col];
+    }
+
+    public Class<?> getColumnClass(int col) {
+        return col == 0 ? Double.class : String.class;
+    }
+
+    public Object getValueAt(int row, int col) {
+        int r = rows[row];
+        switch (col) {
+            case 0:
+                return store.amount(r);
+            case 1:
+                return store.date(r);
+            default:
+                return store.category(r);
+        }
+    }
+}
@@ -3,18 +3,32 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import expense.*;
 
 public class ExpenseTracker extends JFrame {
     private JTextField amountField, dateField;
-    private JComboBox<String> categoryBox, filterCategoryBox, filterMonthBox;
+    private JComboBox<String> categoryBox, filterCategoryBox, periodBox;
+    private JTextField fromField, toField;
+    private int filterFrom = Integer.MIN_VALUE, filterTo = Integer.MAX_VALUE;
+    private static final int[] PERIOD_DAYS = { 0, 7, 30, 90, 365, 0 };
     private JTable expenseTable;
-    private DefaultTableModel tableModel;
-    private List<Expense> expenses = new ArrayList<>();
+    private ExpenseTableModel tableModel;
     private final String[] categories = { "Food", "Travel", "Utilities", "Shopping", "Other" };
-    private JPanel chartPanel;
+    private final ExpenseStore store = new ExpenseStore(categories);
+    private ExpenseChart chartPanel;
+    private JComboBox<ExpenseChart.View> chartViewBox;
+    private JProgressBar progressBar;
+    private JButton addButton, loadButton;
+    private JCheckBox gzipBox;
+    private ExpenseJournal journal;
+    private boolean compacting = false, compactPending = false, loading = false;
+    private static final int COMPACT_AFTER_RECORDS = 100_000;
 
     public ExpenseTracker() {
         setTitle("Expense Tracker");
@@ -54,7 +68,7 @@ public class ExpenseTracker extends JFrame {
         // Row 2: Buttons
         gbc.gridy = 1;
         gbc.gridx = 0;
-        JButton addButton = new JButton("Add");
+        addButton = new JButton("Add");
         inputPanel.add(addButton, gbc);
 
         gbc.gridx = 1;
@@ -62,13 +76,21 @@ public class ExpenseTracker extends JFrame {
         inputPanel.add(saveButton, gbc);
 
         gbc.gridx = 2;
-        JButton loadButton = new JButton("Load");
+        loadButton = new JButton("Load");
         inputPanel.add(loadButton, gbc);
 
         gbc.gridx = 3;
         JButton exportButton = new JButton("Export CSV");
         inputPanel.add(exportButton, gbc);
 
+        gbc.gridx = 4;
+        JButton reportButton = new JButton("Report");
+        inputPanel.add(reportButton, gbc);
+
+        gbc.gridx = 5;
+        gzipBox = new JCheckBox("Gzip export");
+        inputPanel.add(gzipBox, gbc);
+
         add(inputPanel, BorderLayout.NORTH);
 
         // Action Listeners
@@ -76,21 +98,17 @@ public class ExpenseTracker extends JFrame {
         saveButton.addActionListener(e -> saveExpenses());
         loadButton.addActionListener(e -> loadExpenses());
         exportButton.addActionListener(e -> exportToCSV());
+        reportButton.addActionListener(e -> showReport());
 
         // Table
-        tableModel = new DefaultTableModel(new String[] { "Amount", "Date", "Category" }, 0);
+        tableModel = new ExpenseTableModel(store);
         expenseTable = new JTable(tableModel);
         JScrollPane tableScrollPane = new JScrollPane(expenseTable);
         tableScrollPane.setBorder(BorderFactory.createTitledBorder("All Expenses"));
         add(tableScrollPane, BorderLayout.CENTER);
 
         // Chart
-        chartPanel = new JPanel() {
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                drawBarChart(g);
-            }
-        };
+        chartPanel = new ExpenseChart(store, categories);
         chartPanel.setPreferredSize(new Dimension(300, 300));
         chartPanel.setBorder(BorderFactory.createTitledBorder("Filtered Expense Summary"));
         add(chartPanel, BorderLayout.EAST);
@@ -105,93 +123,171 @@ public class ExpenseTracker extends JFrame {
             filterCategoryBox.addItem(cat);
         filterPanel.add(filterCategoryBox);
 
-        filterPanel.add(new JLabel("Month:"));
-        filterMonthBox = new JComboBox<>();
-        filterMonthBox.addItem("All");
-        for (int i = 1; i <= 12; i++)
-            filterMonthBox.addItem(String.format("%02d", i));
-        filterPanel.add(filterMonthBox);
+        filterPanel.add(new JLabel("Period:"));
+        periodBox = new JComboBox<>(new String[] { "All", "Last 7 days", "Last 30 days", "Last 90 days",
+                "Last 365 days", "Custom range" });
+        filterPanel.add(periodBox);
+
+        filterPanel.add(new JLabel("From:"));
+        fromField = new JTextField(8);
+        filterPanel.add(fromField);
+        filterPanel.add(new JLabel("To:"));
+        toField = new JTextField(8);
+        filterPanel.add(toField);
+        fromField.setEnabled(false);
+        toField.setEnabled(false);
+        periodBox.addActionListener(e -> {
+            boolean custom = periodBox.getSelectedIndex() == PERIOD_DAYS.length - 1;
+            fromField.setEnabled(custom);
+            toField.setEnabled(custom);
+        });
+
+        filterPanel.add(new JLabel("Chart:"));
+        chartViewBox = new JComboBox<>(ExpenseChart.View.values());
+        chartViewBox.addActionListener(e -> chartPanel.setView((ExpenseChart.View) chartViewBox.getSelectedItem()));
+        filterPanel.add(chartViewBox);
 
         JButton applyFilter = new JButton("Apply Filter");
         filterPanel.add(applyFilter);
-        applyFilter.addActionListener(e -> {
-            updateTable();
-            chartPanel.repaint();
-        });
+        applyFilter.addActionListener(e -> applyFilter());
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        filterPanel.add(progressBar);
 
         add(filterPanel, BorderLayout.SOUTH);
 
+        openJournal();
         setVisible(true);
     }
 
+    // Restores the last snapshot plus any journaled expenses from the working directory
+    private void openJournal() {
+        try {
+            journal = ExpenseJournal.open(Paths.get("."), store);
+            refreshCategoryFilter();
+            updateTable();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Could not restore saved expenses: " + e.getMessage()
+                    + "\nChanges in this session will not be saved.");
+        }
+    }
+
     private void addExpense() {
         try {
             double amount = Double.parseDouble(amountField.getText());
             String date = dateField.getText();
             String category = categoryBox.getSelectedItem().toString();
-            expenses.add(new Expense(amount, date, category));
+            int row = store.add(amount, date, category);
             updateTable();
             chartPanel.repaint();
             amountField.setText("");
+            appendToJournal(row);
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Invalid input. Please check amount and date.");
         }
     }
 
-    private void updateTable() {
-        tableModel.setRowCount(0);
-        String selectedCategory = filterCategoryBox.getSelectedItem().toString();
-        String selectedMonth = filterMonthBox.getSelectedItem().toString();
-
-        for (Expense exp : expenses) {
-            boolean matchCategory = selectedCategory.equals("All") || exp.category.equals(selectedCategory);
-            boolean matchMonth = selectedMonth.equals("All") || exp.date.substring(5, 7).equals(selectedMonth);
-            if (matchCategory && matchMonth) {
-                tableModel.addRow(new Object[] { exp.amount, exp.date, exp.category });
-            }
+    private void appendToJournal(int row) {
+        if (journal == null)
+            return;
+        try {
+            journal.append(store, row);
+            if (journal.journalRecords() >= COMPACT_AFTER_RECORDS)
+                compact(false);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Error saving: " + e.getMessage());
         }
     }
 
-    private void drawBarChart(Graphics g) {
-        Map<String, Double> totals = new HashMap<>();
-        for (String cat : categories)
-            totals.put(cat, 0.0);
+    private void updateTable() {
+        tableModel.setRows(store.filter(selectedCategoryId(), filterFrom, filterTo));
+    }
 
+    // Offer any categories that came in from a loaded file
+    private void refreshCategoryFilter() {
+        for (int id = filterCategoryBox.getItemCount() - 1; id < store.categoryCount(); id++)
+            filterCategoryBox.addItem(store.categoryName(id));
+    }
+
+    // -1 means "All"
+    private int selectedCategoryId() {
         String selectedCategory = filterCategoryBox.getSelectedItem().toString();
-        String selectedMonth = filterMonthBox.getSelectedItem().toString();
+        return selectedCategory.equals("All") ? -1 : store.findCategory(selectedCategory);
+    }
 
-        for (Expense exp : expenses) {
-            boolean matchCategory = selectedCategory.equals("All") || exp.category.equals(selectedCategory);
-            boolean matchMonth = selectedMonth.equals("All") || exp.date.substring(5, 7).equals(selectedMonth);
-            if (matchCategory && matchMonth) {
-                totals.put(exp.category, totals.getOrDefault(exp.category, 0.0) + exp.amount);
+    // Resolves the period into an inclusive epoch-day range; blank custom dates are open-ended
+    private void applyFilter() {
+        int period = periodBox.getSelectedIndex();
+        try {
+            if (period == PERIOD_DAYS.length - 1) {
+                String from = fromField.getText().trim(), to = toField.getText().trim();
+                filterFrom = from.isEmpty() ? Integer.MIN_VALUE : ExpenseStore.parseDate(from);
+                filterTo = to.isEmpty() ? Integer.MAX_VALUE : ExpenseStore.parseDate(to);
+            } else if (PERIOD_DAYS[period] > 0) {
+                filterTo = (int) LocalDate.now().toEpochDay();
+                filterFrom = filterTo - PERIOD_DAYS[period] + 1;
+            } else {
+                filterFrom = Integer.MIN_VALUE;
+                filterTo = Integer.MAX_VALUE;
             }
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, "Invalid date. Please use yyyy-MM-dd.");
+            return;
         }
-
-        int x = 20, barWidth = 40, maxHeight = 200;
-        double max = Math.max(1.0, Collections.max(totals.values()));
-
-        for (String cat : categories) {
-            int height = (int) ((totals.get(cat) / max) * maxHeight);
-            g.setColor(Color.GREEN);
-            g.fillRect(x, 250 - height, barWidth, height);
-            g.setColor(Color.BLACK);
-            g.drawString(cat, x, 270);
-            g.drawString("₹" + (int) totals.get(cat).doubleValue(), x, 240 - height);
-            x += 60;
-        }
+        updateTable();
+        chartPanel.setFilter(selectedCategoryId(), filterFrom, filterTo);
     }
 
     private void saveExpenses() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("expenses.txt"))) {
-            for (Expense exp : expenses) {
-                writer.write(exp.amount + "," + exp.date + "," + exp.category);
-                writer.newLine();
-            }
-            JOptionPane.showMessageDialog(this, "Expenses saved to expenses.txt");
+        compact(true);
+    }
+
+    // Writes a fresh snapshot in the background and drops the journals it covers
+    private void compact(boolean notify) {
+        if (journal == null) {
+            if (notify)
+                JOptionPane.showMessageDialog(this, "Error saving: saved expenses could not be opened.");
+            return;
+        }
+        if (compacting) {
+            compactPending = true;
+            return;
+        }
+        ExpenseJournal.Compaction compaction;
+        try {
+            compaction = journal.beginCompaction(store);
         } catch (IOException e) {
             JOptionPane.showMessageDialog(this, "Error saving: " + e.getMessage());
+            return;
         }
+        compacting = true;
+        loadButton.setEnabled(false);
+        new SwingWorker<Void, Void>() {
+            protected Void doInBackground() throws Exception {
+                compaction.run();
+                return null;
+            }
+
+            protected void done() {
+                compacting = false;
+                loadButton.setEnabled(!loading);
+                try {
+                    get();
+                    if (notify)
+                        JOptionPane.showMessageDialog(ExpenseTracker.this,
+                                "Expenses saved to " + ExpenseJournal.SNAPSHOT);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(ExpenseTracker.this, "Error saving: " + cause.getMessage());
+                }
+                if (compactPending) {
+                    compactPending = false;
+                    compact(false);
+                }
+            }
+        }.execute();
     }
 
     private void loadExpenses() {
@@ -204,53 +300,180 @@ public class ExpenseTracker extends JFrame {
 
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
-            expenses.clear();
-
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length == 3) {
-                        double amount = Double.parseDouble(parts[0]);
-                        String date = parts[1];
-                        String category = parts[2];
-                        expenses.add(new Expense(amount, date, category));
-                    }
-                }
+            // An add now would be dropped when the loaded store replaces this one
+            loading = true;
+            addButton.setEnabled(false);
+            loadButton.setEnabled(false);
+            progressBar.setValue(0);
+            progressBar.setVisible(true);
+            LoadWorker worker = new LoadWorker(file);
+            worker.addPropertyChangeListener(e -> {
+                if ("progress".equals(e.getPropertyName()))
+                    progressBar.setValue((Integer) e.getNewValue());
+            });
+            worker.execute();
+        }
+    }
+
+    // Parses the file off the EDT into a fresh store, appending each chunk as
+    // it arrives; ExpenseLoader parses only a few chunks ahead of this, so
+    // those are all that is held besides the two stores. Only once the whole
+    // file has parsed does that store replace the shown one, so a failed load
+    // leaves the store and the saved expenses as they were.
+    private class LoadWorker extends SwingWorker<Integer, Void> {
+        private final File file;
+        private final ExpenseStore loaded;
+        private long bytesDone = 0;
+
+        LoadWorker(File file) {
+            this.file = file;
+            // Keep category ids stable for the filter box, which only grows
+            String[] known = new String[store.categoryCount()];
+            for (int id = 0; id < known.length; id++)
+                known[id] = store.categoryName(id);
+            loaded = new ExpenseStore(known);
+        }
+
+        protected Integer doInBackground() throws Exception {
+            long size = Math.max(1, file.length());
+            int[] skipped = { 0 };
+            ExpenseLoader.load(file.toPath(), ForkJoinPool.commonPool(), chunk -> {
+                skipped[0] += chunk.skipped();
+                bytesDone += chunk.bytes();
+                chunk.appendTo(loaded);
+                setProgress((int) (bytesDone * 100 / size));
+            });
+            return skipped[0];
+        }
+
+        protected void done() {
+            progressBar.setVisible(false);
+            loading = false;
+            addButton.setEnabled(true);
+            loadButton.setEnabled(!compacting);
+            try {
+                int skipped = get();
+                store.replaceWith(loaded);
+                refreshCategoryFilter();
                 updateTable();
                 chartPanel.repaint();
-                JOptionPane.showMessageDialog(this, "Expenses loaded successfully.");
+                compact(false);
+                JOptionPane.showMessageDialog(ExpenseTracker.this, "Expenses loaded successfully."
+                        + (skipped > 0 ? "\nSkipped " + skipped + " malformed line(s)." : ""));
             } catch (Exception e) {
-                JOptionPane.showMessageDialog(this, "Error loading: " + e.getMessage());
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                JOptionPane.showMessageDialog(ExpenseTracker.this, "Error loading: " + cause.getMessage());
             }
         }
     }
 
+    // Streams the current rows to export.csv (or export.csv.gz) in the background
     private void exportToCSV() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter("export.csv"))) {
-            writer.println("Amount,Date,Category");
-            for (Expense exp : expenses) {
-                writer.println(exp.amount + "," + exp.date + "," + exp.category);
+        ExpenseStore.Columns rows = store.columns();
+        boolean gzip = gzipBox.isSelected();
+        File file = new File(gzip ? "export.csv.gz" : "export.csv");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            protected Void doInBackground() throws Exception {
+                ExpenseExport.writeCsv(rows, file, gzip,
+                        written -> setProgress((int) ((long) written * 100 / Math.max(1, rows.size()))));
+                return null;
             }
-            JOptionPane.showMessageDialog(this, "Exported to export.csv successfully.");
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Export failed: " + e.getMessage());
-        }
+
+            protected void done() {
+                progressBar.setVisible(false);
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(ExpenseTracker.this,
+                            "Exported to " + file.getName() + " successfully.");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(ExpenseTracker.this, "Export failed: " + cause.getMessage());
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()))
+                progressBar.setValue((Integer) e.getNewValue());
+        });
+        worker.execute();
     }
 
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(ExpenseTracker::new);
+    private void showReport() {
+        JDialog dialog = new JDialog(this, "Expense Report", false);
+        dialog.setSize(900, 450);
+        dialog.setLayout(new BorderLayout());
+
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        options.add(new JLabel("Group by:"));
+        JComboBox<ExpenseReport.Grouping> groupBox = new JComboBox<>(ExpenseReport.Grouping.values());
+        options.add(groupBox);
+        options.add(new JLabel("Category:"));
+        JComboBox<String> categoryFilter = new JComboBox<>();
+        categoryFilter.addItem("All");
+        for (int id = 0; id < store.categoryCount(); id++)
+            categoryFilter.addItem(store.categoryName(id));
+        options.add(categoryFilter);
+        JButton runButton = new JButton("Run");
+        options.add(runButton);
+        JLabel status = new JLabel(" ");
+        options.add(status);
+        dialog.add(options, BorderLayout.NORTH);
+
+        DefaultTableModel reportModel = new DefaultTableModel(new String[] { "Group", "Count", "Sum", "Average",
+                "Min", "Max", "P50", "P90", "P99", "Running Total" }, 0) {
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+        };
+        JScrollPane scrollPane = new JScrollPane(new JTable(reportModel));
+        scrollPane.setBorder(BorderFactory.createTitledBorder("Summary"));
+        dialog.add(scrollPane, BorderLayout.CENTER);
+
+        runButton.addActionListener(e -> {
+            ExpenseStore.Columns rows = store.columns();
+            ExpenseReport.Grouping grouping = (ExpenseReport.Grouping) groupBox.getSelectedItem();
+            int categoryId = categoryFilter.getSelectedIndex() - 1;
+            runButton.setEnabled(false);
+            status.setText("Running...");
+            new SwingWorker<List<ExpenseReport.Row>, Void>() {
+                private long millis;
+
+                protected List<ExpenseReport.Row> doInBackground() {
+                    long start = System.nanoTime();
+                    List<ExpenseReport.Row> result = ExpenseReport.run(rows, grouping, categoryId,
+                            ForkJoinPool.commonPool());
+                    millis = (System.nanoTime() - start) / 1_000_000;
+                    return result;
+                }
+
+                protected void done() {
+                    runButton.setEnabled(true);
+                    try {
+                        reportModel.setRowCount(0);
+                        for (ExpenseReport.Row r : get()) {
+                            reportModel.addRow(new Object[] { r.label, r.count, money(r.sum), money(r.average),
+                                    money(r.min), money(r.max), money(r.p50), money(r.p90), money(r.p99),
+                                    money(r.runningTotal) });
+                        }
+                        status.setText(rows.size() + " expenses in " + millis + " ms");
+                    } catch (Exception ex) {
+                        status.setText("Report failed: " + ex.getMessage());
+                    }
+                }
+            }.execute();
+        });
+
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
     }
 
-    class Expense {
-        double amount;
-        String date;
-        String category;
+    private static String money(double value) {
+        return String.format("%.2f", value);
+    }
 
-        Expense(double amount, String date, String category) {
-            this.amount = amount;
-            this.date = date;
-            this.category = category;
-        }
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(ExpenseTracker::new);
     }
 }
@@ -0,0 +1,54 @@
+package expense;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// drawBarChart() totals and the grouped report
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class AggregateBenchmark {
+    @Param({ "10000", "1000000", "10000000" })
+    int rows;
+
+    ExpenseStore store;
+    ExpenseStore.Columns columns;
+    double[] totals;
+    int from, to;
+
+    @Setup(Level.Trial)
+    public void buildStore() {
+        store = BenchData.store(rows);
+        columns = store.columns();
+        // Starts and ends mid-month, so both the rollup and the row slices are used
+        from = BenchData.FIRST_DAY + 100;
+        to = BenchData.FIRST_DAY + 1000;
+    }
+
+    @Benchmark
+    public double[] chartTotalsAll() {
+        return totals = store.totalsByCategory(-1, Integer.MIN_VALUE, Integer.MAX_VALUE,
+                BenchData.CATEGORIES.length, totals);
+    }
+
+    @Benchmark
+    public double[] chartTotalsRange() {
+        return totals = store.totalsByCategory(-1, from, to, BenchData.CATEGORIES.length, totals);
+    }
+
+    @Benchmark
+    public List<ExpenseReport.Row> reportByMonth() {
+        return ExpenseReport.run(columns, ExpenseReport.Grouping.MONTH, -1, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public List<ExpenseReport.Row> reportByCategory() {
+        return ExpenseReport.run(columns, ExpenseReport.Grouping.CATEGORY, -1, ForkJoinPool.commonPool());
+    }
+}
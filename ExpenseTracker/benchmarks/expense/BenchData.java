@@ -0,0 +1,22 @@
+package expense;
+
+import java.util.Random;
+
+// Deterministic synthetic ledgers shared by the benchmarks
+public class BenchData {
+    static final String[] CATEGORIES = { "Food", "Travel", "Utilities", "Shopping", "Other" };
+    static final int FIRST_DAY = ExpenseStore.epochDayOf(2015, 1, 1);
+    static final int DAYS = 10 * 365;
+
+    // Rows arrive roughly in date order, as they would from daily use
+    static ExpenseStore store(int rows) {
+        ExpenseStore store = new ExpenseStore(CATEGORIES);
+        Random random = new Random(42);
+        for (int i = 0; i < rows; i++) {
+            int day = FIRST_DAY + (int) ((long) i * DAYS / rows);
+            double amount = Math.round(random.nextDouble() * 500_000) / 100.0;
+            store.add(amount, day, random.nextInt(CATEGORIES.length));
+        }
+        return store;
+    }
+}
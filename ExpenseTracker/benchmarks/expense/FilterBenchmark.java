@@ -0,0 +1,41 @@
+package expense;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// updateTable(): computing the filtered row view
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class FilterBenchmark {
+    @Param({ "10000", "1000000", "10000000" })
+    int rows;
+
+    ExpenseStore store;
+    int monthStart;
+
+    @Setup(Level.Trial)
+    public void buildStore() {
+        store = BenchData.store(rows);
+        monthStart = BenchData.FIRST_DAY + BenchData.DAYS / 2;
+    }
+
+    @Benchmark
+    public int[] allRows() {
+        return store.filter(-1, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int[] oneCategory() {
+        return store.filter(2, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int[] thirtyDayRange() {
+        return store.filter(-1, monthStart, monthStart + 29);
+    }
+}
@@ -0,0 +1,41 @@
+package expense;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// loadExpenses(): parsing a text export back into the store
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class LoadBenchmark {
+    @Param({ "10000", "1000000", "10000000" })
+    int rows;
+
+    File file;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        file = File.createTempFile("expenses", ".txt");
+        ExpenseExport.writeCsv(BenchData.store(rows).columns(), file);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public int parallelMappedLoad() throws Exception {
+        ExpenseStore store = new ExpenseStore(BenchData.CATEGORIES);
+        ExpenseLoader.load(file.toPath(), ForkJoinPool.commonPool(), chunk -> chunk.appendTo(store));
+        return store.size();
+    }
+}
@@ -0,0 +1,53 @@
+package expense;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// saveExpenses() snapshot compaction and exportToCSV()
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class SaveBenchmark {
+    @Param({ "10000", "1000000", "10000000" })
+    int rows;
+
+    ExpenseStore.Columns columns;
+    Path dir;
+
+    @Setup(Level.Trial)
+    public void buildStore() throws IOException {
+        columns = BenchData.store(rows).columns();
+        dir = Files.createTempDirectory("expense-bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void binarySnapshot() throws IOException {
+        ExpenseJournal.writeSnapshot(dir, columns, 1);
+    }
+
+    @Benchmark
+    public void exportCsv() throws IOException {
+        ExpenseExport.writeCsv(columns, new File(dir.toFile(), "export.csv"));
+    }
+
+    @Benchmark
+    public void exportCsvGzip() throws IOException {
+        ExpenseExport.writeCsv(columns, new File(dir.toFile(), "export.csv.gz"), true, null);
+    }
+}
@@ -0,0 +1,104 @@
+package expense;
+
+import java.util.Arrays;
+
+// Store rows ordered by epoch day, so a date range maps to one contiguous slice
+// found with two binary searches. Appends in date order keep the index sorted.
+// Out-of-order appends wait at the end until the next query: a few (a
+// back-dated expense) are moved into place one by one, many (a parallel load)
+// are fixed with one sort.
+public class ExpenseDateIndex {
+    // Most out-of-order rows inserted in place rather than sorted
+    static final int INSERT_LIMIT = 64;
+
+    private int[] days = new int[0];
+    private int[] rows = new int[0];
+    private int count = 0;
+    // Length of the sorted prefix
+    private int sorted = 0;
+
+    void add(int row, int epochDay) {
+        if (count == rows.length) {
+            int grown = Math.max(1024, count * 2);
+            days = Arrays.copyOf(days, grown);
+            rows = Arrays.copyOf(rows, grown);
+        }
+        if (sorted == count && (count == 0 || epochDay >= days[count - 1]))
+            sorted++;
+        days[count] = epochDay;
+        rows[count] = row;
+        count++;
+    }
+
+    void clear() {
+        days = new int[0];
+        rows = new int[0];
+        count = 0;
+        sorted = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // First slice position with a day >= fromDay
+    public int start(int fromDay) {
+        ensureSorted();
+        return lowerBound(fromDay, count);
+    }
+
+    // Slice position just past the last day <= toDay
+    public int end(int toDay) {
+        ensureSorted();
+        return toDay == Integer.MAX_VALUE ? count : lowerBound(toDay + 1, count);
+    }
+
+    // Store row at a slice position
+    public int row(int position) {
+        return rows[position];
+    }
+
+    public int day(int position) {
+        return days[position];
+    }
+
+    // First position below limit with a day >= day
+    private int lowerBound(int day, int limit) {
+        int lo = 0, hi = limit;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (days[mid] < day)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Rows break ties so equal days keep insertion order: an inserted row goes
+    // after every equal day, and a sort orders (day, row) pairs packed into longs
+    private void ensureSorted() {
+        if (sorted == count)
+            return;
+        if (count - sorted <= INSERT_LIMIT) {
+            for (; sorted < count; sorted++) {
+                int day = days[sorted], row = rows[sorted];
+                int at = day == Integer.MAX_VALUE ? sorted : lowerBound(day + 1, sorted);
+                System.arraycopy(days, at, days, at + 1, sorted - at);
+                System.arraycopy(rows, at, rows, at + 1, sorted - at);
+                days[at] = day;
+                rows[at] = row;
+            }
+            return;
+        }
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++)
+            packed[i] = ((long) days[i] << 32) | rows[i];
+        Arrays.parallelSort(packed);
+        for (int i = 0; i < count; i++) {
+            days[i] = (int) (packed[i] >> 32);
+            rows[i] = (int) packed[i];
+        }
+        sorted = count;
+    }
+}
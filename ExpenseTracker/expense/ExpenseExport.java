@@ -0,0 +1,168 @@
+package expense;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.IntConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+// Streaming CSV export of a store snapshot. Rows are formatted straight into a
+// reusable byte buffer and written through a FileChannel (optionally gzipped),
+// so exporting allocates nothing per row.
+public class ExpenseExport {
+    static final int BUFFER_SIZE = 1 << 18;
+    static final int PROGRESS_EVERY = 1 << 16;
+    static final byte[] HEADER = "Amount,Date,Category\n".getBytes(StandardCharsets.US_ASCII);
+
+    public static void writeCsv(ExpenseStore.Columns rows, File file) throws IOException {
+        writeCsv(rows, file, false, null);
+    }
+
+    // progress, if given, receives the number of rows written so far
+    public static void writeCsv(ExpenseStore.Columns rows, File file, boolean gzip, IntConsumer progress)
+            throws IOException {
+        String[] names = rows.categoryNames();
+        byte[][] categories = new byte[names.length][];
+        for (int i = 0; i < names.length; i++)
+            categories[i] = (names[i] + "\n").getBytes(StandardCharsets.UTF_8);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                OutputStream out = gzip ? new FastGzip(Channels.newOutputStream(channel)) : null) {
+            Sink sink = new Sink(channel, out);
+            sink.put(HEADER);
+            for (int i = 0; i < rows.size(); i++) {
+                if (sink.remaining() < 64 + categories[rows.categoryIdAt(i)].length)
+                    sink.flush();
+                sink.putAmount(rows.amount(i));
+                sink.put((byte) ',');
+                sink.putDate(rows.epochDay(i));
+                sink.put((byte) ',');
+                sink.put(categories[rows.categoryIdAt(i)]);
+                if (progress != null && (i + 1) % PROGRESS_EVERY == 0)
+                    progress.accept(i + 1);
+            }
+            sink.flush();
+            if (out != null)
+                out.flush();
+            if (progress != null)
+                progress.accept(rows.size());
+        }
+    }
+
+    private static class FastGzip extends GZIPOutputStream {
+        FastGzip(OutputStream out) throws IOException {
+            super(out, 1 << 16);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    // Byte buffer with number/date formatting that flushes to the channel or gzip stream
+    private static class Sink {
+        private final FileChannel channel;
+        private final OutputStream out;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private final ByteBuffer view = ByteBuffer.wrap(buf);
+        private final byte[] digits = new byte[20];
+        private int pos = 0;
+
+        Sink(FileChannel channel, OutputStream out) {
+            this.channel = channel;
+            this.out = out;
+        }
+
+        int remaining() {
+            return buf.length - pos;
+        }
+
+        void flush() throws IOException {
+            if (out != null) {
+                out.write(buf, 0, pos);
+            } else {
+                view.clear().limit(pos);
+                while (view.hasRemaining())
+                    channel.write(view);
+            }
+            pos = 0;
+        }
+
+        void put(byte b) {
+            buf[pos++] = b;
+        }
+
+        void put(byte[] bytes) throws IOException {
+            if (bytes.length > remaining())
+                flush();
+            if (bytes.length > buf.length) {
+                for (byte b : bytes) {
+                    if (pos == buf.length)
+                        flush();
+                    buf[pos++] = b;
+                }
+                return;
+            }
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        // Amounts that are whole cents are written as "123.0" / "12.5" / "12.34";
+        // anything else falls back to Double.toString
+        void putAmount(double v) {
+            long cents = Math.round(v * 100);
+            if (Math.abs(cents) < 1_000_000_000_000_000L && cents / 100.0 == v) {
+                if (cents < 0) {
+                    put((byte) '-');
+                    cents = -cents;
+                }
+                putLong(cents / 100);
+                put((byte) '.');
+                int fraction = (int) (cents % 100);
+                put((byte) ('0' + fraction / 10));
+                if (fraction % 10 != 0)
+                    put((byte) ('0' + fraction % 10));
+            } else {
+                String text = Double.toString(v);
+                for (int i = 0; i < text.length(); i++)
+                    put((byte) text.charAt(i));
+            }
+        }
+
+        void putLong(long v) {
+            int n = 0;
+            do {
+                digits[n++] = (byte) ('0' + v % 10);
+                v /= 10;
+            } while (v > 0);
+            while (n > 0)
+                put(digits[--n]);
+        }
+
+        void putDate(int epochDay) {
+            int yearMonth = ExpenseStore.yearMonthOf(epochDay);
+            int year = Math.floorDiv(yearMonth, 12);
+            if (year < 0 || year > 9999) {
+                String text = LocalDate.ofEpochDay(epochDay).toString();
+                for (int i = 0; i < text.length(); i++)
+                    put((byte) text.charAt(i));
+                return;
+            }
+            int month = Math.floorMod(yearMonth, 12) + 1;
+            int day = epochDay - ExpenseStore.firstDayOf(yearMonth) + 1;
+            put((byte) ('0' + year / 1000));
+            put((byte) ('0' + year / 100 % 10));
+            put((byte) ('0' + year / 10 % 10));
+            put((byte) ('0' + year % 10));
+            put((byte) '-');
+            put((byte) ('0' + month / 10));
+            put((byte) ('0' + month % 10));
+            put((byte) '-');
+            put((byte) ('0' + day / 10));
+            put((byte) ('0' + day % 10));
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Binary persistence for an ExpenseStore: a checksummed snapshot (expenses.dat)
+// plus append-only journals (expenses.journal.<generation>). Each add is one
+// fixed-width journal record; compaction folds everything into a new snapshot.
+//
+// Snapshot: "EXPS" | version | generation | categories | rowCount | rows | crc32
+// Journal:  "EXPJ" | version | generation, then records each ending in a crc32:
+//           'C' id len name     (category definition, local to the file)
+//           'E' amount day id   (one expense)
+// Recovery reads the snapshot, then replays journals newer than its generation
+// in order, stopping at the first torn or corrupt record.
+public class ExpenseJournal {
+    static final int SNAPSHOT_MAGIC = 0x45585053; // "EXPS"
+    static final int JOURNAL_MAGIC = 0x4558504A; // "EXPJ"
+    static final int VERSION = 1;
+    static final int ROW_BYTES = 8 + 4 + 1;
+    public static final String SNAPSHOT = "expenses.dat";
+    static final String JOURNAL_PREFIX = "expenses.journal.";
+
+    private final Path dir;
+    private long generation;
+    private FileChannel journal;
+    private int loggedCategories = 0;
+    private long journalRecords = 0;
+    private final ByteBuffer record = ByteBuffer.allocate(1 + 1 + 2 + 0xFFFF + 4);
+    private final CRC32 crc = new CRC32();
+
+    private ExpenseJournal(Path dir) {
+        this.dir = dir;
+    }
+
+    // Restores the store from dir and starts a fresh journal generation
+    public static ExpenseJournal open(Path dir, ExpenseStore store) throws IOException {
+        ExpenseJournal j = new ExpenseJournal(dir);
+        Path snapshot = dir.resolve(SNAPSHOT);
+        long covered = Files.exists(snapshot) ? readSnapshot(snapshot, store) : 0;
+        long last = covered;
+        for (long gen : journalGenerations(dir)) {
+            if (gen > covered)
+                replay(dir.resolve(JOURNAL_PREFIX + gen), store);
+            last = Math.max(last, gen);
+        }
+        j.startJournal(last + 1);
+        return j;
+    }
+
+    public long journalRecords() {
+        return journalRecords;
+    }
+
+    // Appends one row of the store to the journal and forces it to disk
+    public void append(ExpenseStore store, int row) throws IOException {
+        while (loggedCategories < store.categoryCount()) {
+            byte[] name = store.categoryName(loggedCategories).getBytes(StandardCharsets.UTF_8);
+            record.clear();
+            record.put((byte) 'C').put((byte) loggedCategories).putShort((short) name.length).put(name);
+            writeRecord();
+            loggedCategories++;
+        }
+        record.clear();
+        record.put((byte) 'E').putDouble(store.amount(row)).putInt(store.epochDay(row))
+                .put((byte) store.categoryIdAt(row));
+        writeRecord();
+        journal.force(false);
+        journalRecords++;
+    }
+
+    private void writeRecord() throws IOException {
+        crc.reset();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining())
+            journal.write(record);
+    }
+
+    // Rotates the journal and captures the rows to compact. Call on the thread
+    // that owns the store; run() the result on any thread.
+    public Compaction beginCompaction(ExpenseStore store) throws IOException {
+        long covered = generation;
+        startJournal(generation + 1);
+        return new Compaction(store.columns(), covered);
+    }
+
+    public class Compaction {
+        private final ExpenseStore.Columns rows;
+        private final long generation;
+
+        Compaction(ExpenseStore.Columns rows, long generation) {
+            this.rows = rows;
+            this.generation = generation;
+        }
+
+        public int rowCount() {
+            return rows.size();
+        }
+
+        public void run() throws IOException {
+            writeSnapshot(dir, rows, generation);
+            for (long gen : journalGenerations(dir)) {
+                if (gen <= generation)
+                    Files.deleteIfExists(dir.resolve(JOURNAL_PREFIX + gen));
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        if (journal != null)
+            journal.close();
+    }
+
+    private void startJournal(long gen) throws IOException {
+        if (journal != null)
+            journal.close();
+        generation = gen;
+        // A file already there holds someone's expenses; never truncate it
+        journal = FileChannel.open(dir.resolve(JOURNAL_PREFIX + gen),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putInt(JOURNAL_MAGIC).putInt(VERSION).putLong(gen).flip();
+        while (header.hasRemaining())
+            journal.write(header);
+        journal.force(false);
+        syncDirectory(dir);
+        loggedCategories = 0;
+        journalRecords = 0;
+    }
+
+    private static long[] journalGenerations(Path dir) throws IOException {
+        List<Long> gens = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, JOURNAL_PREFIX + "*")) {
+            for (Path file : files) {
+                try {
+                    gens.add(Long.parseLong(file.getFileName().toString().substring(JOURNAL_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        long[] result = new long[gens.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = gens.get(i);
+        Arrays.sort(result);
+        return result;
+    }
+
+    static void writeSnapshot(Path dir, ExpenseStore.Columns rows, long generation) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+        CRC32 sum = new CRC32();
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 17); // fits the longest name
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buf.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putLong(generation);
+            String[] names = rows.categoryNames();
+            buf.putInt(names.length);
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                if (buf.remaining() < 2 + bytes.length)
+                    flush(out, buf, sum);
+                buf.putShort((short) bytes.length).put(bytes);
+            }
+            if (buf.remaining() < 8)
+                flush(out, buf, sum);
+            buf.putLong(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                if (buf.remaining() < ROW_BYTES)
+                    flush(out, buf, sum);
+                buf.putDouble(rows.amount(i)).putInt(rows.epochDay(i)).put((byte) rows.categoryIdAt(i));
+            }
+            flush(out, buf, sum);
+            buf.putInt((int) sum.getValue()).flip();
+            while (buf.hasRemaining())
+                out.write(buf);
+            out.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Until the rename is on disk a crash could bring back the old
+        // snapshot after the journals it covers are deleted
+        syncDirectory(dir);
+    }
+
+    static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory to force it
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buf, CRC32 sum) throws IOException {
+        buf.flip();
+        sum.update(buf.duplicate());
+        while (buf.hasRemaining())
+            out.write(buf);
+        buf.clear();
+    }
+
+    // Bulk-reads a snapshot into the store and returns its generation
+    static long readSnapshot(Path file, ExpenseStore store) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < 4 + 4 + 8 + 4 + 8 + 4 || size > Integer.MAX_VALUE)
+                throw new IOException(file + ": not a valid snapshot");
+            ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 sum = new CRC32();
+            ByteBuffer body = buf.duplicate();
+            body.limit((int) size - 4);
+            sum.update(body);
+            if ((int) sum.getValue() != buf.getInt((int) size - 4))
+                throw new IOException(file + ": checksum mismatch");
+            if (buf.getInt() != SNAPSHOT_MAGIC || buf.getInt() != VERSION)
+                throw new IOException(file + ": unsupported snapshot format");
+            long generation = buf.getLong();
+            int[] ids = new int[buf.getInt()];
+            for (int i = 0; i < ids.length; i++) {
+                byte[] name = new byte[buf.getShort() & 0xFFFF];
+                buf.get(name);
+                ids[i] = store.categoryId(new String(name, StandardCharsets.UTF_8));
+            }
+            long rows = buf.getLong();
+            if (rows * ROW_BYTES != buf.remaining() - 4)
+                throw new IOException(file + ": row count does not match file size");
+            for (long i = 0; i < rows; i++) {
+                double amount = buf.getDouble();
+                int day = buf.getInt();
+                store.add(amount, day, ids[buf.get() & 0xFF]);
+            }
+            return generation;
+        }
+    }
+
+    // Replays a journal; a torn or corrupt tail ends the replay
+    static int replay(Path file, ExpenseStore store) throws IOException {
+        int replayed = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < 16 || size > Integer.MAX_VALUE)
+                return 0;
+            ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != JOURNAL_MAGIC || buf.getInt() != VERSION)
+                throw new IOException(file + ": unsupported journal format");
+            buf.getLong();
+            int[] ids = new int[ExpenseStore.MAX_CATEGORIES];
+            CRC32 sum = new CRC32();
+            while (buf.remaining() > 0) {
+                int start = buf.position();
+                int len;
+                byte type = buf.get(start);
+                if (type == 'E')
+                    len = 1 + ROW_BYTES;
+                else if (type == 'C' && buf.remaining() >= 4)
+                    len = 4 + (buf.getShort(start + 2) & 0xFFFF);
+                else
+                    break;
+                if (buf.remaining() < len + 4)
+                    break;
+                ByteBuffer rec = buf.duplicate();
+                rec.limit(start + len);
+                sum.reset();
+                sum.update(rec);
+                if ((int) sum.getValue() != buf.getInt(start + len))
+                    break;
+                buf.get();
+                if (type == 'E') {
+                    double amount = buf.getDouble();
+                    int day = buf.getInt();
+                    store.add(amount, day, ids[buf.get() & 0xFF]);
+                    replayed++;
+                } else {
+                    int id = buf.get() & 0xFF;
+                    byte[] name = new byte[buf.getShort() & 0xFFFF];
+                    buf.get(name);
+                    ids[id] = store.categoryId(new String(name, StandardCharsets.UTF_8));
+                }
+                buf.getInt();
+            }
+        }
+        return replayed;
+    }
+}
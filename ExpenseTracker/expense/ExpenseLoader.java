@@ -0,0 +1,299 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// Parses "amount,yyyy-MM-dd,category" files straight from memory-mapped bytes.
+// The file is split at newline boundaries and the pieces are parsed in parallel;
+// no String is created per row, only one per distinct category in a chunk.
+public class ExpenseLoader {
+    static final long MIN_CHUNK = 1 << 20;
+    static final long MAX_CHUNK = 64L << 20;
+
+    // One parsed piece of the file, with category ids local to the chunk
+    public static class Chunk {
+        double[] amounts = new double[1024];
+        int[] days = new int[1024];
+        byte[] categories = new byte[1024];
+        int count = 0;
+        int skipped = 0;
+        final List<String> names = new ArrayList<>();
+        final List<byte[]> encoded = new ArrayList<>();
+        long bytes;
+
+        void add(double amount, int day, int category) {
+            if (count == amounts.length) {
+                amounts = Arrays.copyOf(amounts, count * 2);
+                days = Arrays.copyOf(days, count * 2);
+                categories = Arrays.copyOf(categories, count * 2);
+            }
+            amounts[count] = amount;
+            days[count] = day;
+            categories[count] = (byte) category;
+            count++;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public int skipped() {
+            return skipped;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        // Must run on the thread that owns the store
+        public void appendTo(ExpenseStore store) {
+            int[] ids = new int[names.size()];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = store.categoryId(names.get(i));
+            for (int i = 0; i < count; i++)
+                store.add(amounts[i], days[i], ids[categories[i] & 0xFF]);
+        }
+    }
+
+    // Parses the file on the given executor and hands chunks to sink in file
+    // order. At most two chunks per core are parsed ahead of the sink, so a
+    // slow sink bounds how much parsed data is held rather than the file size.
+    public static void load(Path file, ExecutorService executor, Consumer<Chunk> sink)
+            throws IOException, InterruptedException, ExecutionException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = split(channel, Runtime.getRuntime().availableProcessors() * 4);
+            ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+            int window = 2 * Runtime.getRuntime().availableProcessors();
+            try {
+                for (int i = 0; i + 1 < bounds.length || !inFlight.isEmpty();) {
+                    for (; i + 1 < bounds.length && inFlight.size() < window; i++) {
+                        long start = bounds[i], end = bounds[i + 1];
+                        inFlight.add(executor.submit(() -> parse(channel, start, end)));
+                    }
+                    sink.accept(inFlight.poll().get());
+                }
+            } finally {
+                for (Future<Chunk> part : inFlight)
+                    part.cancel(true);
+            }
+        }
+    }
+
+    // Chunk boundaries, each one just after a newline (or at end of file)
+    static long[] split(FileChannel channel, int parts) throws IOException {
+        long size = channel.size();
+        long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / Math.max(1, parts)));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long pos = 0;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (pos < size) {
+            long next = pos + target;
+            if (next >= size) {
+                next = size;
+            } else {
+                next = nextLineStart(channel, next, size, probe);
+            }
+            bounds.add(next);
+            pos = next;
+        }
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = bounds.get(i);
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer probe)
+            throws IOException {
+        long pos = from;
+        while (pos < size) {
+            probe.clear();
+            int n = channel.read(probe, pos);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n')
+                    return pos + i + 1;
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    static Chunk parse(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        Chunk chunk = new Chunk();
+        chunk.bytes = end - start;
+        int limit = buf.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n')
+                lineEnd++;
+            int contentEnd = lineEnd;
+            while (contentEnd > lineStart && isSpace(buf.get(contentEnd - 1)))
+                contentEnd--;
+            if (contentEnd > lineStart && !parseLine(buf, lineStart, contentEnd, chunk))
+                chunk.skipped++;
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == '\r' || b == ' ' || b == '\t';
+    }
+
+    private static boolean parseLine(MappedByteBuffer buf, int from, int to, Chunk chunk) {
+        int c1 = indexOf(buf, from, to, (byte) ',');
+        if (c1 < 0)
+            return false;
+        int c2 = indexOf(buf, c1 + 1, to, (byte) ',');
+        if (c2 < 0 || indexOf(buf, c2 + 1, to, (byte) ',') >= 0 || c2 + 1 == to)
+            return false;
+        double amount = parseAmount(buf, from, c1);
+        int day = parseDate(buf, c1 + 1, c2);
+        if (Double.isNaN(amount) || day == Integer.MIN_VALUE)
+            return false;
+        int category = categoryId(buf, c2 + 1, to, chunk);
+        if (category < 0)
+            return false;
+        chunk.add(amount, day, category);
+        return true;
+    }
+
+    private static int indexOf(MappedByteBuffer buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++)
+            if (buf.get(i) == b)
+                return i;
+        return -1;
+    }
+
+    // Handles what Double.toString writes ("123.45", "1.0E7"); returns NaN if malformed.
+    // Surrounding whitespace is ignored, as Double.parseDouble trims it.
+    static double parseAmount(ByteBuffer buf, int from, int to) {
+        while (from < to && buf.get(from) <= ' ')
+            from++;
+        while (to > from && buf.get(to - 1) <= ' ')
+            to--;
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buf.get(i) == '-' || buf.get(i) == '+'))
+            negative = buf.get(i++) == '-';
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean seenDot = false, any = false;
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0)
+                        digits++;
+                    if (seenDot)
+                        scale--;
+                } else if (!seenDot) {
+                    scale++;
+                }
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+        if (!any)
+            return Double.NaN;
+        if (i < to && (buf.get(i) == 'E' || buf.get(i) == 'e')) {
+            i++;
+            boolean expNegative = false;
+            if (i < to && (buf.get(i) == '-' || buf.get(i) == '+'))
+                expNegative = buf.get(i++) == '-';
+            int exp = 0;
+            int expStart = i;
+            for (; i < to && buf.get(i) >= '0' && buf.get(i) <= '9'; i++)
+                exp = Math.min(exp * 10 + (buf.get(i) - '0'), 10000);
+            if (i == expStart)
+                return Double.NaN;
+            scale += expNegative ? -exp : exp;
+        }
+        if (i != to)
+            return Double.NaN;
+        double value;
+        // Exact when both operands are exactly representable; otherwise defer to the JDK
+        if (mantissa < (1L << 53) && scale >= -22 && scale <= 22) {
+            value = scale < 0 ? mantissa / POWERS[-scale] : mantissa * POWERS[scale];
+        } else {
+            byte[] text = new byte[to - from];
+            for (int k = 0; k < text.length; k++)
+                text[k] = buf.get(from + k);
+            return Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+        }
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS = new double[23];
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++)
+            POWERS[i] = POWERS[i - 1] * 10;
+    }
+
+    // yyyy-MM-dd to epoch day; Integer.MIN_VALUE if malformed
+    static int parseDate(ByteBuffer buf, int from, int to) {
+        while (from < to && buf.get(from) == ' ')
+            from++;
+        while (to > from && buf.get(to - 1) == ' ')
+            to--;
+        if (to - from != 10 || buf.get(from + 4) != '-' || buf.get(from + 7) != '-')
+            return Integer.MIN_VALUE;
+        int y = digits(buf, from, 4), m = digits(buf, from + 5, 2), d = digits(buf, from + 8, 2);
+        if (y < 0 || m < 1 || m > 12 || d < 1 || d > ExpenseStore.lengthOfMonth(y, m))
+            return Integer.MIN_VALUE;
+        return ExpenseStore.epochDayOf(y, m, d);
+    }
+
+    private static int digits(ByteBuffer buf, int from, int n) {
+        int v = 0;
+        for (int i = from; i < from + n; i++) {
+            int b = buf.get(i) - '0';
+            if (b < 0 || b > 9)
+                return -1;
+            v = v * 10 + b;
+        }
+        return v;
+    }
+
+    // Looks the category bytes up in the chunk's dictionary, adding them if new
+    private static int categoryId(MappedByteBuffer buf, int from, int to, Chunk chunk) {
+        int len = to - from;
+        outer: for (int id = 0; id < chunk.names.size(); id++) {
+            byte[] known = chunk.encoded.get(id);
+            if (known.length != len)
+                continue;
+            for (int k = 0; k < len; k++)
+                if (known[k] != buf.get(from + k))
+                    continue outer;
+            return id;
+        }
+        if (chunk.names.size() == ExpenseStore.MAX_CATEGORIES || len > ExpenseStore.MAX_CATEGORY_BYTES)
+            return -1;
+        byte[] bytes = new byte[len];
+        for (int k = 0; k < len; k++)
+            bytes[k] = buf.get(from + k);
+        String name = new String(bytes, StandardCharsets.UTF_8);
+        // Malformed bytes decode to U+FFFD, which may encode longer
+        if (name.getBytes(StandardCharsets.UTF_8).length > ExpenseStore.MAX_CATEGORY_BYTES)
+            return -1;
+        chunk.encoded.add(bytes);
+        chunk.names.add(name);
+        return chunk.names.size() - 1;
+    }
+}
@@ -0,0 +1,273 @@
+package expense;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Grouped summary report (count, sum, average, min/max, percentiles, running
+// total) computed with a fork-join reduction over the store's chunks. Each leaf
+// fills its own accumulator and partial results are merged pairwise, so no
+// locks are shared between workers.
+public class ExpenseReport {
+    public enum Grouping {
+        MONTH("Month"), WEEK("Week"), CATEGORY("Category");
+
+        private final String label;
+
+        Grouping(String label) {
+            this.label = label;
+        }
+
+        public String toString() {
+            return label;
+        }
+    }
+
+    public static class Row {
+        public final String label;
+        public final long count;
+        public final double sum, average, min, max, p50, p90, p99, runningTotal;
+
+        Row(String label, long count, double sum, double min, double max, double p50, double p90, double p99,
+                double runningTotal) {
+            this.label = label;
+            this.count = count;
+            this.sum = sum;
+            this.average = sum / count;
+            this.min = min;
+            this.max = max;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.runningTotal = runningTotal;
+        }
+    }
+
+    // Log-scale histogram used for percentiles: 8 linear steps per power of two
+    // gives at most ~6% error, which is plenty for a spending report
+    static final int SUB_BITS = 3;
+    static final int SUB = 1 << SUB_BITS;
+    static final int MIN_EXP = -7, MAX_EXP = 40;
+    static final int BUCKETS = 2 + (MAX_EXP - MIN_EXP + 1) * SUB;
+
+    private final ExpenseStore.Columns rows;
+    private final Grouping grouping;
+    private final int categoryId;
+    private final int grain;
+
+    private ExpenseReport(ExpenseStore.Columns rows, Grouping grouping, int categoryId, int parallelism) {
+        this.rows = rows;
+        this.grouping = grouping;
+        this.categoryId = categoryId;
+        int chunks = chunkCount();
+        this.grain = Math.max(1, chunks / (parallelism * 4));
+    }
+
+    // categoryId < 0 means all categories
+    public static List<Row> run(ExpenseStore.Columns rows, Grouping grouping, int categoryId, ForkJoinPool pool) {
+        ExpenseReport report = new ExpenseReport(rows, grouping, categoryId, pool.getParallelism());
+        if (rows.size() == 0)
+            return new ArrayList<>();
+        return report.toRows(pool.invoke(report.new Task(0, report.chunkCount())));
+    }
+
+    private int chunkCount() {
+        return (rows.size() + ExpenseStore.CHUNK_SIZE - 1) >>> ExpenseStore.CHUNK_BITS;
+    }
+
+    private int keyOf(int day, int category) {
+        switch (grouping) {
+            case MONTH:
+                return ExpenseStore.yearMonthOf(day);
+            case WEEK:
+                return weekOf(day);
+            default:
+                return category;
+        }
+    }
+
+    // Monday-based week number; epoch day 0 was a Thursday
+    static int weekOf(int epochDay) {
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    // Per-worker partial results for one run of chunks
+    private class Acc {
+        final int first, last; // key range seen, inclusive
+        final double[] sum, min, max;
+        final long[] count;
+        final int[][] hist;
+
+        Acc(int first, int last) {
+            this.first = first;
+            this.last = last;
+            int n = last - first + 1;
+            sum = new double[n];
+            min = new double[n];
+            max = new double[n];
+            count = new long[n];
+            hist = new int[n][];
+        }
+
+        void merge(Acc o) {
+            for (int k = o.first; k <= o.last; k++) {
+                int j = k - o.first, i = k - first;
+                if (o.count[j] == 0)
+                    continue;
+                if (count[i] == 0) {
+                    min[i] = o.min[j];
+                    max[i] = o.max[j];
+                    hist[i] = o.hist[j];
+                } else {
+                    min[i] = Math.min(min[i], o.min[j]);
+                    max[i] = Math.max(max[i], o.max[j]);
+                    for (int b = 0; b < BUCKETS; b++)
+                        hist[i][b] += o.hist[j][b];
+                }
+                sum[i] += o.sum[j];
+                count[i] += o.count[j];
+            }
+        }
+    }
+
+    private class Task extends RecursiveTask<Acc> {
+        private final int fromChunk, toChunk;
+
+        Task(int fromChunk, int toChunk) {
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        protected Acc compute() {
+            if (toChunk - fromChunk <= grain)
+                return leaf();
+            int mid = (fromChunk + toChunk) >>> 1;
+            Task left = new Task(fromChunk, mid);
+            left.fork();
+            Acc right = new Task(mid, toChunk).compute();
+            Acc l = left.join();
+            if (l == null)
+                return right;
+            if (right == null)
+                return l;
+            Acc merged = l.first <= right.first && l.last >= right.last ? l
+                    : right.first <= l.first && right.last >= l.last ? right
+                    : new Acc(Math.min(l.first, right.first), Math.max(l.last, right.last));
+            if (merged != l)
+                merged.merge(l);
+            if (merged != right)
+                merged.merge(right);
+            return merged;
+        }
+
+        private Acc leaf() {
+            int to = Math.min(rows.size(), toChunk << ExpenseStore.CHUNK_BITS);
+            // First pass finds the key range so the accumulators can be dense arrays
+            int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+            for (int c = fromChunk; c < toChunk; c++) {
+                int[] day = rows.days[c];
+                byte[] cat = rows.categories[c];
+                int n = Math.min(ExpenseStore.CHUNK_SIZE, to - (c << ExpenseStore.CHUNK_BITS));
+                for (int i = 0; i < n; i++) {
+                    if (categoryId >= 0 && (cat[i] & 0xFF) != categoryId)
+                        continue;
+                    int key = keyOf(day[i], cat[i] & 0xFF);
+                    lo = Math.min(lo, key);
+                    hi = Math.max(hi, key);
+                }
+            }
+            if (lo > hi)
+                return null;
+            Acc acc = new Acc(lo, hi);
+            for (int c = fromChunk; c < toChunk; c++) {
+                double[] amt = rows.amounts[c];
+                int[] day = rows.days[c];
+                byte[] cat = rows.categories[c];
+                int n = Math.min(ExpenseStore.CHUNK_SIZE, to - (c << ExpenseStore.CHUNK_BITS));
+                for (int i = 0; i < n; i++) {
+                    if (categoryId >= 0 && (cat[i] & 0xFF) != categoryId)
+                        continue;
+                    int k = keyOf(day[i], cat[i] & 0xFF) - lo;
+                    double v = amt[i];
+                    if (acc.count[k]++ == 0) {
+                        acc.min[k] = v;
+                        acc.max[k] = v;
+                        acc.hist[k] = new int[BUCKETS];
+                    } else {
+                        if (v < acc.min[k])
+                            acc.min[k] = v;
+                        if (v > acc.max[k])
+                            acc.max[k] = v;
+                    }
+                    acc.sum[k] += v;
+                    acc.hist[k][bucket(v)]++;
+                }
+            }
+            return acc;
+        }
+    }
+
+    private List<Row> toRows(Acc acc) {
+        List<Row> result = new ArrayList<>();
+        if (acc == null)
+            return result;
+        double running = 0;
+        for (int k = acc.first; k <= acc.last; k++) {
+            int i = k - acc.first;
+            if (acc.count[i] == 0)
+                continue;
+            running += acc.sum[i];
+            result.add(new Row(label(k), acc.count[i], acc.sum[i], acc.min[i], acc.max[i],
+                    percentile(acc, i, 0.50), percentile(acc, i, 0.90), percentile(acc, i, 0.99), running));
+        }
+        return result;
+    }
+
+    private String label(int key) {
+        switch (grouping) {
+            case MONTH:
+                return String.format("%04d-%02d", Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1);
+            case WEEK:
+                return "Week of " + LocalDate.ofEpochDay(key * 7L - 3);
+            default:
+                return rows.categoryNames()[key];
+        }
+    }
+
+    static int bucket(double v) {
+        if (!(v > 0))
+            return 0;
+        int exp = Math.getExponent(v);
+        if (exp < MIN_EXP)
+            return 0;
+        if (exp > MAX_EXP)
+            return BUCKETS - 1;
+        int sub = (int) (Double.doubleToRawLongBits(v) >>> (52 - SUB_BITS)) & (SUB - 1);
+        return 1 + (exp - MIN_EXP) * SUB + sub;
+    }
+
+    // Midpoint of the bucket holding the q-th value, clamped to the group's range
+    private double percentile(Acc acc, int i, double q) {
+        long rank = Math.max(1, (long) Math.ceil(q * acc.count[i]));
+        int[] hist = acc.hist[i];
+        long seen = 0;
+        int b = 0;
+        for (; b < BUCKETS; b++) {
+            seen += hist[b];
+            if (seen >= rank)
+                break;
+        }
+        double value;
+        if (b == 0) {
+            value = acc.min[i];
+        } else if (b >= BUCKETS - 1) {
+            value = acc.max[i];
+        } else {
+            int exp = (b - 1) / SUB + MIN_EXP;
+            int sub = (b - 1) % SUB;
+            value = Math.scalb(1.0 + (sub + 0.5) / SUB, exp);
+        }
+        return Math.max(acc.min[i], Math.min(acc.max[i], value));
+    }
+}
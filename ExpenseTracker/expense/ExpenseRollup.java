@@ -0,0 +1,130 @@
+package expense;
+
+import java.util.Arrays;
+
+// Year-month x category rollup (total, count, min, max) maintained as rows are
+// added, so the chart can be drawn without rescanning the ledger.
+public class ExpenseRollup {
+    private int firstMonth; // year * 12 + (month - 1) of row 0
+    private int monthCount = 0;
+    private double[][] totals = new double[0][];
+    private double[][] mins = new double[0][];
+    private double[][] maxs = new double[0][];
+    private int[][] counts = new int[0][];
+
+    public void clear() {
+        monthCount = 0;
+        totals = new double[0][];
+        mins = new double[0][];
+        maxs = new double[0][];
+        counts = new int[0][];
+    }
+
+    public void add(int epochDay, int categoryId, double amount) {
+        int row = rowFor(ExpenseStore.yearMonthOf(epochDay));
+        if (counts[row].length <= categoryId) {
+            int len = Math.max(categoryId + 1, counts[row].length * 2);
+            totals[row] = Arrays.copyOf(totals[row], len);
+            mins[row] = Arrays.copyOf(mins[row], len);
+            maxs[row] = Arrays.copyOf(maxs[row], len);
+            counts[row] = Arrays.copyOf(counts[row], len);
+        }
+        if (counts[row][categoryId]++ == 0) {
+            mins[row][categoryId] = amount;
+            maxs[row][categoryId] = amount;
+        } else {
+            mins[row][categoryId] = Math.min(mins[row][categoryId], amount);
+            maxs[row][categoryId] = Math.max(maxs[row][categoryId], amount);
+        }
+        totals[row][categoryId] += amount;
+    }
+
+    // Returns the row for a year-month, widening the covered range if needed
+    private int rowFor(int yearMonth) {
+        if (monthCount == 0) {
+            firstMonth = yearMonth;
+            resize(0, 1);
+        } else if (yearMonth < firstMonth) {
+            resize(firstMonth - yearMonth, monthCount + firstMonth - yearMonth);
+            firstMonth = yearMonth;
+        } else if (yearMonth >= firstMonth + monthCount) {
+            resize(0, yearMonth - firstMonth + 1);
+        }
+        return yearMonth - firstMonth;
+    }
+
+    private void resize(int shift, int newCount) {
+        totals = shifted(totals, shift, newCount);
+        mins = shifted(mins, shift, newCount);
+        maxs = shifted(maxs, shift, newCount);
+        int[][] newCounts = new int[newCount][];
+        System.arraycopy(counts, 0, newCounts, shift, monthCount);
+        for (int i = 0; i < newCount; i++)
+            if (newCounts[i] == null)
+                newCounts[i] = new int[0];
+        counts = newCounts;
+        monthCount = newCount;
+    }
+
+    private double[][] shifted(double[][] src, int shift, int newCount) {
+        double[][] dst = new double[newCount][];
+        System.arraycopy(src, 0, dst, shift, monthCount);
+        for (int i = 0; i < newCount; i++)
+            if (dst[i] == null)
+                dst[i] = new double[0];
+        return dst;
+    }
+
+    // Per-category totals over whole months fromMonth..toMonth (year * 12 + month - 1,
+    // inclusive); categoryId < 0 means all. Cost is O(months x categories),
+    // independent of the number of rows.
+    public double[] totalsByCategory(int categoryId, int fromMonth, int toMonth, int categoryCount, double[] out) {
+        if (out == null || out.length < categoryCount)
+            out = new double[categoryCount];
+        else
+            Arrays.fill(out, 0.0);
+        for (int row = Math.max(0, fromMonth - firstMonth); row < monthCount && firstMonth + row <= toMonth; row++) {
+            double[] t = totals[row];
+            for (int cat = 0; cat < t.length && cat < categoryCount; cat++) {
+                if (categoryId < 0 || cat == categoryId)
+                    out[cat] += t[cat];
+            }
+        }
+        return out;
+    }
+
+    public boolean isEmpty() {
+        return monthCount == 0;
+    }
+
+    public int firstYearMonth() {
+        return firstMonth;
+    }
+
+    public int lastYearMonth() {
+        return firstMonth + monthCount - 1;
+    }
+
+    public double total(int yearMonth, int categoryId) {
+        int row = yearMonth - firstMonth;
+        if (row < 0 || row >= monthCount || categoryId >= totals[row].length)
+            return 0.0;
+        return totals[row][categoryId];
+    }
+
+    public int count(int yearMonth, int categoryId) {
+        int row = yearMonth - firstMonth;
+        if (row < 0 || row >= monthCount || categoryId >= counts[row].length)
+            return 0;
+        return counts[row][categoryId];
+    }
+
+    // NaN when the cell has no rows
+    public double min(int yearMonth, int categoryId) {
+        return count(yearMonth, categoryId) == 0 ? Double.NaN : mins[yearMonth - firstMonth][categoryId];
+    }
+
+    public double max(int yearMonth, int categoryId) {
+        return count(yearMonth, categoryId) == 0 ? Double.NaN : maxs[yearMonth - firstMonth][categoryId];
+    }
+}
@@ -0,0 +1,284 @@
+package expense;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+// Columnar expense storage: one primitive array per column, grown in fixed-size
+// chunks so large ledgers never copy or box existing rows.
+public class ExpenseStore {
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final int MAX_CATEGORIES = 256;
+    // Longest category name in UTF-8 bytes; the journal stores lengths as u16
+    static final int MAX_CATEGORY_BYTES = 0xFFFF;
+
+    private double[][] amounts = new double[4][];
+    private int[][] days = new int[4][];
+    private byte[][] categories = new byte[4][];
+    private int size = 0;
+    private long version = 0;
+    private ExpenseRollup rollup = new ExpenseRollup();
+    private ExpenseDateIndex dateIndex = new ExpenseDateIndex();
+
+    // Category dictionary: id <-> name, ids are stored as unsigned bytes
+    private List<String> categoryNames = new ArrayList<>();
+    private Map<String, Integer> categoryIds = new HashMap<>();
+
+    public ExpenseStore(String... initialCategories) {
+        for (String cat : initialCategories)
+            categoryId(cat);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Bumped on every change, so views can tell when cached output is stale
+    public long version() {
+        return version;
+    }
+
+    // Drops the old chunks rather than reusing them, so a Columns view taken
+    // before clear() stays intact for whoever is still reading it
+    public void clear() {
+        amounts = new double[4][];
+        days = new int[4][];
+        categories = new byte[4][];
+        size = 0;
+        version++;
+        rollup.clear();
+        dateIndex.clear();
+    }
+
+    // Takes over the rows, categories and indexes of a store filled on
+    // another thread, without copying them; other must not be used again.
+    // Like clear(), it leaves earlier Columns views intact.
+    public void replaceWith(ExpenseStore other) {
+        amounts = other.amounts;
+        days = other.days;
+        categories = other.categories;
+        size = other.size;
+        rollup = other.rollup;
+        dateIndex = other.dateIndex;
+        categoryNames = other.categoryNames;
+        categoryIds = other.categoryIds;
+        version = Math.max(version, other.version) + 1;
+    }
+
+    // Read-only view of the first size() rows. Later appends never touch these
+    // rows, so the view can be handed to a background thread.
+    public Columns columns() {
+        return new Columns(amounts.clone(), days.clone(), categories.clone(), size,
+                categoryNames.toArray(new String[0]));
+    }
+
+    public static class Columns {
+        final double[][] amounts;
+        final int[][] days;
+        final byte[][] categories;
+        final int size;
+        final String[] categoryNames;
+
+        Columns(double[][] amounts, int[][] days, byte[][] categories, int size, String[] categoryNames) {
+            this.amounts = amounts;
+            this.days = days;
+            this.categories = categories;
+            this.size = size;
+            this.categoryNames = categoryNames;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public double amount(int row) {
+            return amounts[row >>> CHUNK_BITS][row & CHUNK_MASK];
+        }
+
+        public int epochDay(int row) {
+            return days[row >>> CHUNK_BITS][row & CHUNK_MASK];
+        }
+
+        public int categoryIdAt(int row) {
+            return categories[row >>> CHUNK_BITS][row & CHUNK_MASK] & 0xFF;
+        }
+
+        public String[] categoryNames() {
+            return categoryNames;
+        }
+    }
+
+    // Month x category aggregates kept in step with every add()
+    public ExpenseRollup rollup() {
+        return rollup;
+    }
+
+    public int add(double amount, int epochDay, int categoryId) {
+        int chunk = size >>> CHUNK_BITS;
+        int offset = size & CHUNK_MASK;
+        if (offset == 0)
+            allocateChunk(chunk);
+        amounts[chunk][offset] = amount;
+        days[chunk][offset] = epochDay;
+        categories[chunk][offset] = (byte) categoryId;
+        rollup.add(epochDay, categoryId, amount);
+        dateIndex.add(size, epochDay);
+        version++;
+        return size++;
+    }
+
+    public int add(double amount, String date, String category) {
+        return add(amount, parseDate(date), categoryId(category));
+    }
+
+    private void allocateChunk(int chunk) {
+        if (chunk == amounts.length) {
+            int grown = chunk * 2;
+            amounts = Arrays.copyOf(amounts, grown);
+            days = Arrays.copyOf(days, grown);
+            categories = Arrays.copyOf(categories, grown);
+        }
+        amounts[chunk] = new double[CHUNK_SIZE];
+        days[chunk] = new int[CHUNK_SIZE];
+        categories[chunk] = new byte[CHUNK_SIZE];
+    }
+
+    public double amount(int row) {
+        return amounts[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    public int epochDay(int row) {
+        return days[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    public int categoryIdAt(int row) {
+        return categories[row >>> CHUNK_BITS][row & CHUNK_MASK] & 0xFF;
+    }
+
+    public String category(int row) {
+        return categoryNames.get(categoryIdAt(row));
+    }
+
+    public String date(int row) {
+        return LocalDate.ofEpochDay(epochDay(row)).toString();
+    }
+
+    // Returns the id for a category name, registering it if it is new
+    public int categoryId(String name) {
+        Integer id = categoryIds.get(name);
+        if (id != null)
+            return id;
+        if (categoryNames.size() == MAX_CATEGORIES)
+            throw new IllegalStateException("Too many categories (max " + MAX_CATEGORIES + ")");
+        if (name.getBytes(StandardCharsets.UTF_8).length > MAX_CATEGORY_BYTES)
+            throw new IllegalArgumentException("Category name too long");
+        int newId = categoryNames.size();
+        categoryNames.add(name);
+        categoryIds.put(name, newId);
+        return newId;
+    }
+
+    // Returns the id for a known category or -1, without registering it
+    public int findCategory(String name) {
+        Integer id = categoryIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public int categoryCount() {
+        return categoryNames.size();
+    }
+
+    public String categoryName(int id) {
+        return categoryNames.get(id);
+    }
+
+    // Rows dated fromDay..toDay (inclusive) in date order, found by binary search
+    // on the date index. Use Integer.MIN_VALUE / MAX_VALUE for open ends and
+    // categoryId < 0 for all categories.
+    public int[] filter(int categoryId, int fromDay, int toDay) {
+        int start = dateIndex.start(fromDay), end = Math.max(start, dateIndex.end(toDay));
+        int[] out = new int[end - start];
+        int count = 0;
+        for (int p = start; p < end; p++) {
+            int row = dateIndex.row(p);
+            if (categoryId < 0 || categoryIdAt(row) == categoryId)
+                out[count++] = row;
+        }
+        return count == out.length ? out : Arrays.copyOf(out, count);
+    }
+
+    // Per-category totals for a date range. Whole months come from the rollup;
+    // only the partial months at either end are summed row by row.
+    public double[] totalsByCategory(int categoryId, int fromDay, int toDay, int categoryCount, double[] out) {
+        if (rollup.isEmpty() || fromDay > toDay)
+            return rollup.totalsByCategory(categoryId, 1, 0, categoryCount, out);
+        int firstMonth = rollup.firstYearMonth(), lastMonth = rollup.lastYearMonth();
+        int from = Math.max(fromDay, firstDayOf(firstMonth));
+        int to = Math.min(toDay, firstDayOf(lastMonth + 1) - 1);
+        int fullFrom = yearMonthOf(from), fullTo = yearMonthOf(to);
+        if (firstDayOf(fullFrom) != from)
+            fullFrom++;
+        if (firstDayOf(fullTo + 1) - 1 != to)
+            fullTo--;
+        out = rollup.totalsByCategory(categoryId, fullFrom, fullTo, categoryCount, out);
+        if (fullFrom > fullTo) {
+            addRange(out, categoryId, categoryCount, from, to);
+        } else {
+            addRange(out, categoryId, categoryCount, from, firstDayOf(fullFrom) - 1);
+            addRange(out, categoryId, categoryCount, firstDayOf(fullTo + 1), to);
+        }
+        return out;
+    }
+
+    private void addRange(double[] out, int categoryId, int categoryCount, int fromDay, int toDay) {
+        if (fromDay > toDay)
+            return;
+        int end = dateIndex.end(toDay);
+        for (int p = dateIndex.start(fromDay); p < end; p++) {
+            int row = dateIndex.row(p);
+            int id = categoryIdAt(row);
+            if ((categoryId < 0 || id == categoryId) && id < categoryCount)
+                out[id] += amount(row);
+        }
+    }
+
+    public static int firstDayOf(int yearMonth) {
+        return epochDayOf(Math.floorDiv(yearMonth, 12), Math.floorMod(yearMonth, 12) + 1, 1);
+    }
+
+    // Date helpers working on epoch days without allocating LocalDate objects.
+    // Civil-from-days conversion, see Howard Hinnant's "chrono-compatible
+    // low-level date algorithms".
+    public static int yearMonthOf(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int m = mp < 10 ? mp + 3 : mp - 9;
+        int y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+        return y * 12 + (m - 1);
+    }
+
+    public static int epochDayOf(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    public static int lengthOfMonth(int year, int month) {
+        if (month == 2)
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    public static int parseDate(String date) {
+        return (int) LocalDate.parse(date.trim()).toEpochDay();
+    }
+}
@@ -3,14 +3,34 @@ import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import inventory.*;
 
 public class InventoryManager extends JFrame {
-    private DefaultTableModel tableModel;
+    private static final int SNAPSHOT_EVERY_MS = 60_000;
+    private static final int REORDER_SCAN_MS = 5_000;
+    private static final int UNDO_DEPTH = 100;
+
+    private final InventoryStore store = new InventoryStore();
+    private InventoryService service;
+    private InventoryJournal journal;
+    private boolean compacting = false, compactPending = false;
+    private InventoryTableModel tableModel;
     private JTable table;
-    private JTextField nameField, qtyField, priceField, searchField;
+    private JTextField nameField, qtyField, priceField, thresholdField, searchField;
     private JLabel totalValueLabel;
     private boolean isDarkMode = false;
+    private javax.swing.Timer searchTimer;
+    private JButton[] editButtons;
+    private JButton undoButton, redoButton;
+    private UndoHistory history;
+    private JProgressBar progressBar;
+    private JButton cancelImportButton;
+    private ImportWorker importWorker;
+    private ReorderMonitor reorderMonitor;
+    private DefaultTableModel alertModel;
 
     public InventoryManager() {
         setTitle("Inventory Management System");
@@ -19,11 +39,7 @@ public class InventoryManager extends JFrame {
         setLayout(new BorderLayout());
 
         // Table
-        tableModel = new DefaultTableModel(new String[] { "Item Name", "Quantity", "Price (₹)", "Total" }, 0) {
-            public boolean isCellEditable(int row, int col) {
-                return false;
-            }
-        };
+        tableModel = new InventoryTableModel(store);
         table = new JTable(tableModel);
         JScrollPane scrollPane = new JScrollPane(table);
         add(scrollPane, BorderLayout.CENTER);
@@ -33,31 +49,48 @@ public class InventoryManager extends JFrame {
         nameField = new JTextField();
         qtyField = new JTextField();
         priceField = new JTextField();
+        thresholdField = new JTextField();
         searchField = new JTextField();
 
         inputPanel.add(new JLabel("Item Name:"));
         inputPanel.add(new JLabel("Quantity:"));
         inputPanel.add(new JLabel("Price (₹):"));
-        inputPanel.add(new JLabel(""));
+        inputPanel.add(new JLabel("Reorder At:"));
         inputPanel.add(new JLabel("Search:"));
 
         inputPanel.add(nameField);
         inputPanel.add(qtyField);
         inputPanel.add(priceField);
-        inputPanel.add(new JLabel(""));
+        inputPanel.add(thresholdField);
         inputPanel.add(searchField);
 
         add(inputPanel, BorderLayout.NORTH);
 
+        // Low-stock alerts
+        alertModel = new DefaultTableModel(new String[] { "Item", "Qty", "Reorder At", "Order" }, 0) {
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+        };
+        JPanel alertPanel = new JPanel(new BorderLayout());
+        alertPanel.add(new JLabel("Low Stock"), BorderLayout.NORTH);
+        alertPanel.add(new JScrollPane(new JTable(alertModel)), BorderLayout.CENTER);
+        alertPanel.setPreferredSize(new Dimension(280, 0));
+        add(alertPanel, BorderLayout.EAST);
+
         // Button Panel
         JPanel buttonPanel = new JPanel();
 
         JButton addButton = new JButton("Add");
         JButton updateButton = new JButton("Update");
         JButton deleteButton = new JButton("Delete");
+        undoButton = new JButton("Undo");
+        redoButton = new JButton("Redo");
         JButton saveButton = new JButton("Save");
         JButton loadButton = new JButton("Load");
+        JButton importButton = new JButton("Import Feed");
         JButton exportButton = new JButton("Export CSV");
+        JButton valuationButton = new JButton("Valuation");
         JButton toggleThemeButton = new JButton("🌗 Toggle Theme");
 
         totalValueLabel = new JLabel("Total Value: ₹0.00");
@@ -65,40 +98,104 @@ public class InventoryManager extends JFrame {
         buttonPanel.add(addButton);
         buttonPanel.add(updateButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(undoButton);
+        buttonPanel.add(redoButton);
         buttonPanel.add(saveButton);
         buttonPanel.add(loadButton);
+        buttonPanel.add(importButton);
         buttonPanel.add(exportButton);
+        buttonPanel.add(valuationButton);
         buttonPanel.add(toggleThemeButton);
         buttonPanel.add(totalValueLabel);
 
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        cancelImportButton = new JButton("Cancel");
+        cancelImportButton.setVisible(false);
+        buttonPanel.add(progressBar);
+        buttonPanel.add(cancelImportButton);
+        editButtons = new JButton[] { addButton, updateButton, deleteButton, saveButton, loadButton, importButton,
+                exportButton, valuationButton };
+
         add(buttonPanel, BorderLayout.SOUTH);
 
         // Action Listeners
         addButton.addActionListener(e -> addItem());
         updateButton.addActionListener(e -> updateItem());
         deleteButton.addActionListener(e -> deleteItem());
+        undoButton.addActionListener(e -> undo());
+        redoButton.addActionListener(e -> redo());
         saveButton.addActionListener(e -> saveToFile());
         loadButton.addActionListener(e -> loadFromFile());
+        importButton.addActionListener(e -> importFeed());
+        cancelImportButton.addActionListener(e -> importWorker.cancelParse());
         exportButton.addActionListener(e -> exportCSV());
+        valuationButton.addActionListener(e -> showValuation());
         toggleThemeButton.addActionListener(e -> toggleTheme());
 
+        // Ctrl+Z / Ctrl+Y anywhere in the window
+        JRootPane root = getRootPane();
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Z"), "undo");
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Y"), "redo");
+        root.getActionMap().put("undo", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                if (undoButton.isEnabled())
+                    undo();
+            }
+        });
+        root.getActionMap().put("redo", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                if (redoButton.isEnabled())
+                    redo();
+            }
+        });
+
+        // Typing restarts the timer, so a burst of keystrokes runs one search
+        searchTimer = new javax.swing.Timer(150, e -> filterTable());
+        searchTimer.setRepeats(false);
         searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             public void insertUpdate(javax.swing.event.DocumentEvent e) {
-                filterTable();
+                searchTimer.restart();
             }
 
             public void removeUpdate(javax.swing.event.DocumentEvent e) {
-                filterTable();
+                searchTimer.restart();
             }
 
             public void changedUpdate(javax.swing.event.DocumentEvent e) {
-                filterTable();
+                searchTimer.restart();
             }
         });
 
+        openJournal();
+        // Periodically fold the journal into a fresh snapshot so startup replay stays short
+        new javax.swing.Timer(SNAPSHOT_EVERY_MS, e -> {
+            if (journal != null && journal.journalRecords() > 0)
+                compact(false);
+        }).start();
         setVisible(true);
     }
 
+    // Restores the last snapshot plus any journaled changes from the working directory
+    private void openJournal() {
+        try {
+            journal = InventoryJournal.open(Paths.get("."), store);
+            service = new InventoryService(store, journal);
+        } catch (IOException e) {
+            store.clear();
+            service = new InventoryService(store);
+            JOptionPane.showMessageDialog(this, "Could not restore saved inventory: " + e.getMessage()
+                    + "\nChanges in this session will not be saved.");
+        }
+        history = new UndoHistory(service, UNDO_DEPTH);
+        updateUndoButtons();
+        // Picks up stock moved by other terminals; local edits refresh the alerts directly
+        reorderMonitor = new ReorderMonitor(service);
+        reorderMonitor.start(REORDER_SCAN_MS, suggestions -> SwingUtilities.invokeLater(() -> showAlerts(suggestions)));
+        refreshTable();
+    }
+
     private void addItem() {
         String name = nameField.getText().trim();
         String qtyText = qtyField.getText().trim();
@@ -112,31 +209,56 @@ public class InventoryManager extends JFrame {
         try {
             int qty = Integer.parseInt(qtyText);
             double price = Double.parseDouble(priceText);
-            double total = qty * price;
-            tableModel.addRow(new Object[] { name, qty, price, String.format("%.2f", total) });
+            int threshold = parseThreshold();
+            history.edit("Add " + name, java.util.List.of(name), () -> service.add(name, qty, price, threshold));
+            if (searchField.getText().isEmpty())
+                tableModel.addItem(store.find(name));
+            else
+                filterTable();
             clearFields();
             updateTotalValue();
+            refreshAlerts();
+            updateUndoButtons();
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Quantity and Price must be numbers!");
+        } catch (UncheckedIOException e) {
+            JOptionPane.showMessageDialog(this, "Error saving: " + e.getCause().getMessage());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage());
         }
     }
 
     private void updateItem() {
-        int row = table.getSelectedRow();
+        int row = selectedModelRow();
         if (row != -1) {
             try {
                 String name = nameField.getText().trim();
                 int qty = Integer.parseInt(qtyField.getText().trim());
                 double price = Double.parseDouble(priceField.getText().trim());
-                double total = qty * price;
-
-                tableModel.setValueAt(name, row, 0);
-                tableModel.setValueAt(qty, row, 1);
-                tableModel.setValueAt(price, row, 2);
-                tableModel.setValueAt(String.format("%.2f", total), row, 3);
+                int threshold = parseThreshold();
+                if (name.isEmpty())
+                    throw new IllegalArgumentException();
+
+                int id = tableModel.itemId(row);
+                String oldName = store.name(id);
+                history.edit(oldName.equals(name) ? "Update " + name : "Rename " + oldName,
+                        java.util.List.of(oldName, name), () -> {
+                            service.update(id, name, qty, price);
+                            if (!oldName.equals(name))
+                                history.renamed(oldName, name);
+                            service.setThreshold(name, threshold);
+                        });
+                if (searchField.getText().isEmpty())
+                    tableModel.itemChanged(row);
+                else
+                    filterTable();
 
                 clearFields();
                 updateTotalValue();
+                refreshAlerts();
+                updateUndoButtons();
+            } catch (UncheckedIOException e) {
+                JOptionPane.showMessageDialog(this, "Error saving: " + e.getCause().getMessage());
             } catch (Exception e) {
                 JOptionPane.showMessageDialog(this, "Invalid update data!");
             }
@@ -146,83 +268,391 @@ public class InventoryManager extends JFrame {
     }
 
     private void deleteItem() {
-        int row = table.getSelectedRow();
+        int row = selectedModelRow();
         if (row != -1) {
+            try {
+                int id = tableModel.itemId(row);
+                String name = store.name(id);
+                history.edit("Delete " + name, java.util.List.of(name), () -> service.delete(id));
+            } catch (UncheckedIOException e) {
+                JOptionPane.showMessageDialog(this, "Error saving: " + e.getCause().getMessage());
+            }
             tableModel.removeRow(row);
             updateTotalValue();
+            refreshAlerts();
+            updateUndoButtons();
         } else {
             JOptionPane.showMessageDialog(this, "Select a row to delete!");
         }
     }
 
     private void saveToFile() {
-        try (PrintWriter pw = new PrintWriter("inventory.txt")) {
-            for (int i = 0; i < tableModel.getRowCount(); i++) {
-                pw.println(tableModel.getValueAt(i, 0) + "," +
-                        tableModel.getValueAt(i, 1) + "," +
-                        tableModel.getValueAt(i, 2));
-            }
-            JOptionPane.showMessageDialog(this, "Saved to inventory.txt");
+        compact(true);
+    }
+
+    // Writes a fresh snapshot in the background and drops the journals it covers
+    private void compact(boolean notify) {
+        if (journal == null) {
+            if (notify)
+                JOptionPane.showMessageDialog(this, "Error saving: saved inventory could not be opened.");
+            return;
+        }
+        if (compacting || importWorker != null) {
+            compactPending = true;
+            return;
+        }
+        InventoryJournal.Compaction compaction;
+        try {
+            compaction = service.beginSnapshot();
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Save failed.");
+            JOptionPane.showMessageDialog(this, "Error saving: " + e.getMessage());
+            return;
         }
+        compacting = true;
+        new SwingWorker<Void, Void>() {
+            protected Void doInBackground() throws Exception {
+                compaction.run();
+                return null;
+            }
+
+            protected void done() {
+                compacting = false;
+                try {
+                    get();
+                    if (notify)
+                        JOptionPane.showMessageDialog(InventoryManager.this,
+                                "Inventory saved to " + InventoryJournal.SNAPSHOT);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(InventoryManager.this, "Error saving: " + cause.getMessage());
+                }
+                if (compactPending) {
+                    compactPending = false;
+                    compact(false);
+                }
+            }
+        }.execute();
     }
 
+    // Replaces the inventory with the items in inventory.txt (name,quantity,price)
     private void loadFromFile() {
-        tableModel.setRowCount(0);
+        java.util.List<String[]> items = new ArrayList<>();
+        int skipped = 0;
         try (BufferedReader br = new BufferedReader(new FileReader("inventory.txt"))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(",");
-                if (parts.length == 3) {
+                try {
+                    if (parts.length != 3 || parts[0].isEmpty())
+                        throw new NumberFormatException();
+                    Integer.parseInt(parts[1]);
+                    Double.parseDouble(parts[2]);
+                    items.add(parts);
+                } catch (NumberFormatException e) {
+                    skipped++;
+                }
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Load failed.");
+            return;
+        }
+
+        try {
+            history.editAll("Load inventory.txt", () -> {
+                service.clear();
+                for (String[] parts : items) {
                     String name = parts[0];
                     int qty = Integer.parseInt(parts[1]);
                     double price = Double.parseDouble(parts[2]);
-                    double total = qty * price;
-                    tableModel.addRow(new Object[] { name, qty, price, String.format("%.2f", total) });
+                    int id = store.find(name);
+                    if (id == -1)
+                        service.add(name, qty, price);
+                    else
+                        service.update(id, name, qty, price);
                 }
+            });
+            compact(false);
+            JOptionPane.showMessageDialog(this, "Loaded inventory.txt"
+                    + (skipped > 0 ? "\nSkipped " + skipped + " malformed line(s)." : ""));
+        } catch (UncheckedIOException e) {
+            JOptionPane.showMessageDialog(this, "Error saving: " + e.getCause().getMessage());
+        }
+        refreshTable();
+        updateUndoButtons();
+    }
+
+    private void importFeed() {
+        JFileChooser fileChooser = new JFileChooser();
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        setEditingEnabled(false);
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        cancelImportButton.setEnabled(true);
+        cancelImportButton.setVisible(true);
+        importWorker = new ImportWorker(fileChooser.getSelectedFile());
+        importWorker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()))
+                progressBar.setValue((Integer) e.getNewValue());
+        });
+        importWorker.execute();
+    }
+
+    // The store is written off the EDT while an import applies, so everything
+    // that edits, searches or reads it in full waits until the import is done
+    private void setEditingEnabled(boolean enabled) {
+        for (JButton button : editButtons)
+            button.setEnabled(enabled);
+        searchField.setEnabled(enabled);
+        if (enabled) {
+            updateUndoButtons();
+        } else {
+            undoButton.setEnabled(false);
+            redoButton.setEnabled(false);
+        }
+    }
+
+    // Parses a supplier feed ("sku,quantity,price") in parallel, then applies
+    // the merged items in one batch and refreshes the table once
+    private class ImportWorker extends SwingWorker<Integer, Void> {
+        private final File file;
+        private InventoryImport.Batch batch;
+        private boolean applying = false;
+
+        ImportWorker(File file) {
+            this.file = file;
+        }
+
+        // Cancelling is only possible while parsing; once items are being
+        // applied the import runs to completion
+        synchronized void cancelParse() {
+            if (!applying)
+                cancel(true);
+        }
+
+        protected Integer doInBackground() throws Exception {
+            long size = Math.max(1, file.length());
+            batch = InventoryImport.parse(file.toPath(), ForkJoinPool.commonPool(),
+                    bytes -> setProgress((int) (bytes * 80 / size)));
+            synchronized (this) {
+                if (isCancelled())
+                    return 0;
+                applying = true;
+            }
+            int count = Math.max(1, batch.count());
+            int[] rejected = { 0 };
+            history.edit("Import " + file.getName(), batch.names(), () -> rejected[0] = service.importItems(batch,
+                    applied -> setProgress(80 + (int) ((long) applied * 20 / count))));
+            return rejected[0];
+        }
+
+        protected void done() {
+            importWorker = null;
+            progressBar.setVisible(false);
+            cancelImportButton.setVisible(false);
+            setEditingEnabled(true);
+            refreshTable();
+            if (isCancelled()) {
+                if (compactPending) {
+                    compactPending = false;
+                    compact(false);
+                }
+                JOptionPane.showMessageDialog(InventoryManager.this, "Import cancelled.");
+                return;
+            }
+            compact(false);
+            try {
+                int rejected = get();
+                JOptionPane.showMessageDialog(InventoryManager.this, "Imported " + (batch.count() - rejected)
+                        + " item(s) from " + batch.lines() + " line(s)."
+                        + (batch.lines() > batch.count() ? "\nMerged " + (batch.lines() - batch.count())
+                                + " duplicate SKU line(s)." : "")
+                        + (batch.skipped() > 0 ? "\nSkipped " + batch.skipped() + " malformed line(s)." : "")
+                        + (rejected > 0 ? "\nLeft " + rejected + " item(s) unchanged: quantity below reserved units."
+                                : ""));
+            } catch (Exception e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                JOptionPane.showMessageDialog(InventoryManager.this, "Error importing: " + cause.getMessage());
             }
-            updateTotalValue();
-            JOptionPane.showMessageDialog(this, "Loaded inventory.txt");
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Load failed.");
         }
     }
 
     private void exportCSV() {
         try (PrintWriter pw = new PrintWriter("inventory_export.csv")) {
             pw.println("Item,Quantity,Price,Total");
-            for (int i = 0; i < tableModel.getRowCount(); i++) {
-                pw.println(tableModel.getValueAt(i, 0) + "," +
-                        tableModel.getValueAt(i, 1) + "," +
-                        tableModel.getValueAt(i, 2) + "," +
-                        tableModel.getValueAt(i, 3));
-            }
+            // Under the read lock, so other terminals cannot add or remove items mid-export
+            service.read(() -> {
+                for (int id : store.ids()) {
+                    pw.println(store.name(id) + "," + store.quantity(id) + "," + store.price(id) + ","
+                            + String.format("%.2f", store.total(id)));
+                }
+                return null;
+            });
             JOptionPane.showMessageDialog(this, "Exported to inventory_export.csv");
         } catch (IOException e) {
             JOptionPane.showMessageDialog(this, "Export failed.");
         }
     }
 
+    // Values all stock at FIFO and weighted-average cost on a background pool
+    private void showValuation() {
+        JDialog dialog = new JDialog(this, "Stock Valuation", false);
+        dialog.setSize(800, 450);
+        dialog.setLayout(new BorderLayout());
+
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton runButton = new JButton("Run");
+        options.add(runButton);
+        JLabel status = new JLabel(" ");
+        options.add(status);
+        dialog.add(options, BorderLayout.NORTH);
+
+        String[] columns = { "Item", "Quantity", "Avg Cost", "FIFO Value", "Avg Cost Value" };
+        InventoryValuation[] shown = { null };
+        AbstractTableModel reportModel = new AbstractTableModel() {
+            public int getRowCount() {
+                return shown[0] == null ? 0 : shown[0].size();
+            }
+
+            public int getColumnCount() {
+                return columns.length;
+            }
+
+            public String getColumnName(int col) {
+                return columns[col];
+            }
+
+            public Object getValueAt(int row, int col) {
+                InventoryValuation v = shown[0];
+                switch (col) {
+                    case 0:
+                        return v.name(row);
+                    case 1:
+                        return v.quantity(row);
+                    case 2:
+                        return String.format("%.2f", v.averageCost(row));
+                    case 3:
+                        return String.format("%.2f", v.fifoValue(row));
+                    default:
+                        return String.format("%.2f", v.averageValue(row));
+                }
+            }
+        };
+        dialog.add(new JScrollPane(new JTable(reportModel)), BorderLayout.CENTER);
+
+        runButton.addActionListener(e -> {
+            runButton.setEnabled(false);
+            status.setText("Running...");
+            new SwingWorker<InventoryValuation, Void>() {
+                private long millis;
+
+                protected InventoryValuation doInBackground() {
+                    long start = System.nanoTime();
+                    InventoryValuation result = InventoryValuation.run(service, ForkJoinPool.commonPool());
+                    millis = (System.nanoTime() - start) / 1_000_000;
+                    return result;
+                }
+
+                protected void done() {
+                    runButton.setEnabled(true);
+                    try {
+                        shown[0] = get();
+                        reportModel.fireTableDataChanged();
+                        status.setText(String.format("%d items, FIFO ₹%.2f, weighted average ₹%.2f, in %d ms",
+                                shown[0].size(), shown[0].totalFifo(), shown[0].totalAverage(), millis));
+                    } catch (Exception ex) {
+                        status.setText("Valuation failed: " + ex.getMessage());
+                    }
+                }
+            }.execute();
+        });
+
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    private void undo() {
+        String label = history.undoLabel();
+        try {
+            int failed = history.undo();
+            if (failed > 0)
+                JOptionPane.showMessageDialog(this, "Undid " + label + ", but " + failed
+                        + " item(s) could not be restored: stock is reserved or the name is taken.");
+        } catch (UncheckedIOException e) {
+            JOptionPane.showMessageDialog(this, "Error saving: " + e.getCause().getMessage());
+        }
+        refreshTable();
+        updateUndoButtons();
+    }
+
+    private void redo() {
+        String label = history.redoLabel();
+        try {
+            int failed = history.redo();
+            if (failed > 0)
+                JOptionPane.showMessageDialog(this, "Redid " + label + ", but " + failed
+                        + " item(s) could not be changed: stock is reserved or the name is taken.");
+        } catch (UncheckedIOException e) {
+            JOptionPane.showMessageDialog(this, "Error saving: " + e.getCause().getMessage());
+        }
+        refreshTable();
+        updateUndoButtons();
+    }
+
+    private void updateUndoButtons() {
+        undoButton.setEnabled(history.canUndo());
+        undoButton.setToolTipText(history.canUndo() ? "Undo " + history.undoLabel() : null);
+        redoButton.setEnabled(history.canRedo());
+        redoButton.setToolTipText(history.canRedo() ? "Redo " + history.redoLabel() : null);
+    }
+
     private void filterTable() {
-        String search = searchField.getText().toLowerCase();
-        TableRowSorter<TableModel> sorter = new TableRowSorter<>(tableModel);
-        table.setRowSorter(sorter);
-        sorter.setRowFilter(RowFilter.regexFilter("(?i)" + search, 0));
+        searchTimer.stop();
+        String search = searchField.getText();
+        tableModel.setItems(search.isEmpty() ? store.ids() : store.search(search));
+    }
+
+    private void refreshTable() {
+        filterTable();
+        updateTotalValue();
+        refreshAlerts();
     }
 
     private void updateTotalValue() {
-        double total = 0;
-        for (int i = 0; i < tableModel.getRowCount(); i++) {
-            total += Double.parseDouble(tableModel.getValueAt(i, 3).toString());
-        }
-        totalValueLabel.setText("Total Value: ₹" + String.format("%.2f", total));
+        totalValueLabel.setText("Total Value: ₹" + String.format("%.2f", store.totalValue()));
+    }
+
+    private void refreshAlerts() {
+        if (importWorker == null) // the scan would wait for the import's write lock
+            showAlerts(reorderMonitor.scan());
+    }
+
+    private void showAlerts(java.util.List<ReorderMonitor.Suggestion> suggestions) {
+        alertModel.setRowCount(0);
+        for (ReorderMonitor.Suggestion s : suggestions)
+            alertModel.addRow(new Object[] { s.name, s.quantity, s.threshold, s.order });
+    }
+
+    // Blank means no reorder threshold
+    private int parseThreshold() {
+        String text = thresholdField.getText().trim();
+        int threshold = text.isEmpty() ? 0 : Integer.parseInt(text);
+        if (threshold < 0)
+            throw new NumberFormatException();
+        return threshold;
+    }
+
+    // Selected row in model coordinates, or -1
+    private int selectedModelRow() {
+        int row = table.getSelectedRow();
+        return row == -1 ? -1 : table.convertRowIndexToModel(row);
     }
 
     private void clearFields() {
         nameField.setText("");
         qtyField.setText("");
         priceField.setText("");
+        thresholdField.setText("");
     }
 
     private void toggleTheme() {
@@ -275,7 +705,10 @@ public class InventoryManager extends JFrame {
         }
     }
 
+    // With arguments, runs headless (see InventoryCli); otherwise opens the window
     public static void main(String[] args) {
+        if (args.length > 0)
+            System.exit(InventoryCli.run(args));
         SwingUtilities.invokeLater(InventoryManager::new);
     }
 }
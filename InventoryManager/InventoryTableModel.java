@@ -0,0 +1,72 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import inventory.*;
+
+// Read-only table view over an InventoryStore: each row is an item id
+public class InventoryTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = { "Item Name", "Quantity", "Price (₹)", "Reorder At", "Total" };
+
+    private final InventoryStore store;
+    private int[] rows = new int[16];
+    private int rowCount = 0;
+
+    public InventoryTableModel(InventoryStore store) {
+        this.store = store;
+    }
+
+    public int itemId(int row) {
+        return rows[row];
+    }
+
+    public void addItem(int id) {
+        if (rowCount == rows.length)
+            rows = Arrays.copyOf(rows, Math.max(16, rowCount * 2));
+        rows[rowCount++] = id;
+        fireTableRowsInserted(rowCount - 1, rowCount - 1);
+    }
+
+    public void itemChanged(int row) {
+        fireTableRowsUpdated(row, row);
+    }
+
+    public void removeRow(int row) {
+        System.arraycopy(rows, row + 1, rows, row, rowCount - row - 1);
+        rowCount--;
+        fireTableRowsDeleted(row, row);
+    }
+
+    // Replaces all rows at once with a single change event
+    public void setItems(int[] ids) {
+        rows = ids;
+        rowCount = ids.length;
+        fireTableDataChanged();
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    public String getColumnName(int col) {
+        return COLUMNS[col];
+    }
+
+    public Object getValueAt(int row, int col) {
+        int id = rows[row];
+        switch (col) {
+            case 0:
+                return store.name(id);
+            case 1:
+                return store.quantity(id);
+            case 2:
+                return store.price(id);
+            case 3:
+                return store.threshold(id);
+            default:
+                return String.format("%.2f", store.total(id));
+        }
+    }
+}
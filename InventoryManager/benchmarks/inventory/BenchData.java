@@ -0,0 +1,28 @@
+package inventory;
+
+import java.util.Random;
+
+// Deterministic synthetic catalogues shared by the benchmarks
+public class BenchData {
+    static final String[] WORDS = { "Widget", "Gadget", "Bolt", "Nut", "Washer", "Bracket", "Hinge", "Spring",
+            "Cable", "Switch", "Valve", "Gasket", "Bearing", "Pulley", "Sensor", "Relay" };
+    static final String[] FINISHES = { "Steel", "Brass", "Nylon", "Zinc", "Copper", "Chrome" };
+
+    // Names look like "Brass Hinge 40mm #1234": a few common words plus a unique tail
+    static String name(int i) {
+        Random random = new Random(i * 31L + 7);
+        return FINISHES[random.nextInt(FINISHES.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " "
+                + (5 + random.nextInt(60)) + "mm #" + i;
+    }
+
+    static InventoryStore store(int items) {
+        InventoryStore store = new InventoryStore();
+        Random random = new Random(42);
+        for (int i = 0; i < items; i++) {
+            int id = store.add(name(i), random.nextInt(500), Math.round(random.nextDouble() * 100_000) / 100.0);
+            if (i % 4 == 0)
+                store.setThreshold(id, random.nextInt(100));
+        }
+        return store;
+    }
+}
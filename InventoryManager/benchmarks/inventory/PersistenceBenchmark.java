@@ -0,0 +1,87 @@
+package inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+// Save (snapshot compaction), startup load of that snapshot, and parsing a
+// supplier feed of the same size
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class PersistenceBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    int items;
+
+    Path saveDir, loadDir, feed;
+    InventoryService service;
+    InventoryJournal journal;
+    ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void buildStore() throws IOException {
+        InventoryStore store = BenchData.store(items);
+        saveDir = Files.createTempDirectory("inventory-bench");
+        journal = InventoryJournal.open(saveDir, new InventoryStore());
+        service = new InventoryService(store, journal);
+
+        loadDir = Files.createTempDirectory("inventory-bench");
+        InventoryJournal saved = InventoryJournal.open(loadDir, new InventoryStore());
+        new InventoryService(store, saved).beginSnapshot().run();
+        saved.close();
+
+        feed = saveDir.resolve("feed.csv");
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(feed))) {
+            for (int id : store.ids())
+                pw.println(store.name(id) + "," + store.quantity(id) + "," + store.price(id));
+        }
+        pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        pool.shutdown();
+        journal.close();
+        for (Path dir : new Path[] { saveDir, loadDir }) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    // Every open starts a new (empty) journal generation; drop it so each
+    // load sees the same directory. Loads take milliseconds, so per-invocation
+    // teardown does not skew them.
+    @TearDown(Level.Invocation)
+    public void dropJournals() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(loadDir, "inventory.journal.*")) {
+            for (Path file : files)
+                Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        service.beginSnapshot().run();
+    }
+
+    @Benchmark
+    public InventoryStore load() throws IOException {
+        InventoryStore store = new InventoryStore();
+        InventoryJournal.open(loadDir, store).close();
+        return store;
+    }
+
+    @Benchmark
+    public int parseFeed() throws Exception {
+        return InventoryImport.parse(feed, pool, null).count();
+    }
+}
@@ -0,0 +1,34 @@
+package inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// filterTable(): the row ids for the search box after each keystroke of
+// "brass hinge", from one letter (a scan) to a selective trigram query, and
+// for a cleared box
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class SearchBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    int items;
+
+    @Param({ "", "b", "br", "bra", "brass", "brass h", "brass hinge" })
+    String query;
+
+    InventoryStore store;
+
+    @Setup(Level.Trial)
+    public void buildStore() {
+        store = BenchData.store(items);
+    }
+
+    @Benchmark
+    public int[] filter() {
+        return query.isEmpty() ? store.ids() : store.search(query);
+    }
+}
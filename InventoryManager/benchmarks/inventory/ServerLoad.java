@@ -0,0 +1,117 @@
+package inventory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Load run for InventoryServer. Starts a journaled service in a temporary
+// directory, then clients post /stock batches and read /items/<sku> for a
+// while; reports request throughput and latency percentiles.
+//
+//   java -cp <classes> inventory.ServerLoad [clients] [items] [seconds] [batch]
+public class ServerLoad {
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int items = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int batch = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        Path dir = Files.createTempDirectory("inventory-load");
+        InventoryStore store = new InventoryStore();
+        InventoryJournal journal = InventoryJournal.open(dir, store);
+        InventoryService service = new InventoryService(store, journal);
+        for (int i = 0; i < items; i++)
+            service.add("SKU-" + i, 1000, 1 + i % 100);
+        InventoryServer server = new InventoryServer(service, "127.0.0.1", 0, 200);
+        server.start();
+        String base = "http://127.0.0.1:" + server.port();
+
+        ExecutorService clientPool = Executors.newFixedThreadPool(4);
+        HttpClient client = HttpClient.newBuilder().executor(clientPool).build();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long[][] latencies = new long[clients][];
+        int[] counts = new int[clients];
+        int[] failures = new int[clients];
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] workers = new Future<?>[clients];
+        for (int c = 0; c < clients; c++) {
+            int me = c;
+            workers[c] = pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] times = new long[1 << 16];
+                int n = 0;
+                start.await();
+                while (running.get()) {
+                    HttpRequest request;
+                    if (random.nextInt(4) == 0) {
+                        request = HttpRequest.newBuilder(URI.create(base + "/items/SKU-" + random.nextInt(items)))
+                                .GET().build();
+                    } else {
+                        StringBuilder body = new StringBuilder("[");
+                        for (int k = 0; k < batch; k++) {
+                            if (k > 0)
+                                body.append(',');
+                            String op = random.nextBoolean() ? "reserve" : "release";
+                            body.append("{\"op\":\"").append(op).append("\",\"sku\":\"SKU-")
+                                    .append(random.nextInt(items)).append("\",\"units\":1}");
+                        }
+                        request = HttpRequest.newBuilder(URI.create(base + "/stock"))
+                                .POST(HttpRequest.BodyPublishers.ofString(body.append(']').toString())).build();
+                    }
+                    long began = System.nanoTime();
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() != 200)
+                        failures[me]++;
+                    if (n == times.length)
+                        times = Arrays.copyOf(times, n * 2);
+                    times[n++] = System.nanoTime() - began;
+                }
+                latencies[me] = times;
+                counts[me] = n;
+                return null;
+            });
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Future<?> worker : workers)
+            worker.get();
+        double elapsed = (System.nanoTime() - began) / 1e9;
+        pool.shutdown();
+        clientPool.shutdown();
+        server.stop();
+        journal.close();
+
+        int total = 0, failed = 0;
+        for (int c = 0; c < clients; c++) {
+            total += counts[c];
+            failed += failures[c];
+        }
+        long[] all = new long[total];
+        for (int c = 0, at = 0; c < clients; c++) {
+            System.arraycopy(latencies[c], 0, all, at, counts[c]);
+            at += counts[c];
+        }
+        Arrays.sort(all);
+        System.out.printf("clients=%d items=%d batch=%d requests=%d failed=%d throughput=%.0f req/s%n", clients,
+                items, batch, total, failed, total / elapsed);
+        System.out.printf("latency p50=%.2fms p99=%.2fms max=%.2fms%n", percentile(all, 0.50), percentile(all, 0.99),
+                all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+}
@@ -0,0 +1,149 @@
+package inventory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Multi-threaded stress run for InventoryService. Worker threads hammer a
+// shared set of items with random adjust/reserve/release/fulfil calls while an
+// observer checks that no item is ever oversold; at the end every item's stock
+// must equal its starting stock plus the movements the workers saw succeed.
+// With a json-file the result is also written there for tracking across
+// versions. Exits with 1 if any check failed.
+//
+//   java -cp <classes> inventory.ServiceStress [threads] [items] [seconds] [json-file]
+public class ServiceStress {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int items = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int initial = 1000;
+
+        InventoryService service = new InventoryService(new InventoryStore());
+        String[] skus = new String[items];
+        for (int i = 0; i < items; i++) {
+            skus[i] = "SKU-" + i;
+            service.add(skus[i], initial, 1 + i % 100);
+            if (i % 2 == 0)
+                service.setThreshold(skus[i], initial); // keeps the low-stock heap busy
+        }
+
+        // Per worker, per item: net quantity change and net reserved change
+        long[][] quantityDelta = new long[threads][items];
+        long[][] reservedDelta = new long[threads][items];
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong operations = new AtomicLong();
+        AtomicLong violations = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] workers = new Future<?>[threads];
+        for (int t = 0; t < threads; t++) {
+            long[] dq = quantityDelta[t], dr = reservedDelta[t];
+            workers[t] = pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long ops = 0;
+                start.await();
+                while (running.get()) {
+                    int item = random.nextInt(items);
+                    int units = 1 + random.nextInt(5);
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            int delta = random.nextBoolean() ? units : -units;
+                            if (service.adjust(skus[item], delta))
+                                dq[item] += delta;
+                            break;
+                        case 1:
+                            if (service.reserve(skus[item], units))
+                                dr[item] += units;
+                            break;
+                        case 2:
+                            if (service.release(skus[item], units))
+                                dr[item] -= units;
+                            break;
+                        default:
+                            if (service.fulfil(skus[item], units)) {
+                                dq[item] -= units;
+                                dr[item] -= units;
+                            }
+                    }
+                    ops++;
+                }
+                operations.addAndGet(ops);
+                return null;
+            });
+        }
+        Future<?> observer = pool.submit(() -> {
+            start.await();
+            while (running.get()) {
+                for (String sku : skus)
+                    if (service.available(sku) < 0)
+                        violations.incrementAndGet();
+            }
+            return null;
+        });
+
+        long began = System.nanoTime();
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Future<?> worker : workers)
+            worker.get();
+        observer.get();
+        double elapsed = (System.nanoTime() - began) / 1e9;
+        pool.shutdown();
+
+        InventoryStore store = service.store();
+        long mismatches = 0;
+        int low = 0;
+        double value = 0;
+        for (int i = 0; i < items; i++) {
+            long quantity = initial, reserved = 0;
+            for (int t = 0; t < threads; t++) {
+                quantity += quantityDelta[t][i];
+                reserved += reservedDelta[t][i];
+            }
+            int id = store.find(skus[i]);
+            if (store.quantity(id) != quantity || store.reserved(id) != reserved || reserved < 0
+                    || reserved > quantity)
+                mismatches++;
+            value += store.total(id);
+            if (store.threshold(id) > 0 && store.quantity(id) <= store.threshold(id))
+                low++;
+        }
+        boolean valueOk = Math.abs(value - store.totalValue()) < 1e-6 * Math.max(1, value);
+        boolean lowOk = store.lowStock().length == low;
+
+        System.out.printf("threads=%d items=%d ops=%d elapsed=%.2fs throughput=%.0f ops/s%n", threads, items,
+                operations.get(), elapsed, operations.get() / elapsed);
+        System.out.printf("oversold=%d mismatched=%d totalValue=%s lowStock=%s%n", violations.get(), mismatches,
+                valueOk ? "ok" : "drifted", lowOk ? "ok" : "stale");
+        boolean passed = violations.get() == 0 && mismatches == 0 && valueOk && lowOk;
+        if (args.length > 3)
+            writeJson(Paths.get(args[3]), threads, items, operations.get(), elapsed, violations.get(), mismatches,
+                    valueOk, lowOk, passed);
+        if (!passed)
+            System.exit(1);
+    }
+
+    private static void writeJson(Path file, int threads, int items, long ops, double elapsed, long oversold,
+            long mismatched, boolean valueOk, boolean lowOk, boolean passed) throws IOException {
+        StringBuilder out = new StringBuilder("{\"harness\":\"ServiceStress\",\"time\":");
+        Json.string(out, Instant.now().toString());
+        out.append(",\"java\":");
+        Json.string(out, System.getProperty("java.version"));
+        out.append(",\"threads\":").append(threads).append(",\"items\":").append(items)
+                .append(",\"operations\":").append(ops).append(",\"seconds\":");
+        Json.number(out, Math.round(elapsed * 1000) / 1000.0);
+        out.append(",\"opsPerSecond\":").append(Math.round(ops / elapsed)).append(",\"oversold\":").append(oversold)
+                .append(",\"mismatched\":").append(mismatched).append(",\"totalValueOk\":").append(valueOk)
+                .append(",\"lowStockOk\":").append(lowOk).append(",\"passed\":").append(passed).append("}\n");
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        Files.write(file, out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
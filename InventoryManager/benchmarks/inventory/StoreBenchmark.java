@@ -0,0 +1,50 @@
+package inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// addItem() / updateItem() / deleteItem() through InventoryService, without a
+// journal so only the in-memory structures are measured
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class StoreBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    int items;
+
+    InventoryService service;
+    int[] ids;
+    int next;
+    long added;
+
+    @Setup(Level.Trial)
+    public void buildStore() {
+        InventoryStore store = BenchData.store(items);
+        service = new InventoryService(store);
+        ids = store.ids();
+    }
+
+    // One add and one delete, so the catalogue keeps its size
+    @Benchmark
+    public void addThenDelete() {
+        int id = service.add("New Item #" + added++, 10, 9.99);
+        service.delete(id);
+    }
+
+    @Benchmark
+    public void update() {
+        int id = ids[next++ % ids.length];
+        InventoryStore store = service.store();
+        service.update(id, store.name(id), store.quantity(id) ^ 1, store.price(id));
+    }
+
+    @Benchmark
+    public boolean adjust() {
+        int id = ids[next++ % ids.length];
+        return service.adjust(service.store().name(id), (next & 1) == 0 ? 1 : -1);
+    }
+}
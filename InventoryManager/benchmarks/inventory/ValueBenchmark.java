@@ -0,0 +1,51 @@
+package inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// updateTotalValue() against recomputing the sum, plus the low-stock scan and
+// the FIFO / weighted-average valuation report
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class ValueBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    int items;
+
+    InventoryService service;
+
+    @Setup(Level.Trial)
+    public void buildStore() {
+        service = new InventoryService(BenchData.store(items));
+    }
+
+    @Benchmark
+    public double totalValue() {
+        return service.store().totalValue();
+    }
+
+    // What updateTotalValue() did before the running total
+    @Benchmark
+    public double recomputedTotal() {
+        InventoryStore store = service.store();
+        double total = 0;
+        for (int id : store.ids())
+            total += store.total(id);
+        return total;
+    }
+
+    @Benchmark
+    public int[] lowStock() {
+        return service.store().lowStock();
+    }
+
+    @Benchmark
+    public double valuation() {
+        return InventoryValuation.run(service, ForkJoinPool.commonPool()).totalFifo();
+    }
+}
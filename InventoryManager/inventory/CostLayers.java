@@ -0,0 +1,150 @@
+package inventory;
+
+import java.util.Arrays;
+
+// Cost history per item id: FIFO layers of (units, unit cost) in a small
+// primitive ring buffer per item, plus the running weighted-average unit cost.
+// Receipts append a layer (or grow the newest one if the cost is the same),
+// issues consume layers oldest first, and both valuations are updated on the
+// spot so reading them is O(1). Writes for one id must not run concurrently.
+public class CostLayers {
+    private int[][] units = new int[16][];
+    private double[][] costs = new double[16][];
+    private int[] head = new int[16];
+    private int[] count = new int[16];
+    private double[] fifoValue = new double[16];
+    private double[] averageCost = new double[16];
+
+    public int layers(int id) {
+        return count[id];
+    }
+
+    // Layer k, oldest first
+    public int layerUnits(int id, int k) {
+        return units[id][(head[id] + k) % units[id].length];
+    }
+
+    public double layerCost(int id, int k) {
+        return costs[id][(head[id] + k) % costs[id].length];
+    }
+
+    public double fifoValue(int id) {
+        return fifoValue[id];
+    }
+
+    public double averageCost(int id) {
+        return averageCost[id];
+    }
+
+    // Starts an item's history with a single receipt
+    void reset(int id, int quantity, double cost) {
+        ensure(id);
+        units[id] = new int[1];
+        costs[id] = new double[1];
+        head[id] = 0;
+        count[id] = 0;
+        fifoValue[id] = 0;
+        averageCost[id] = cost;
+        if (quantity > 0)
+            receive(id, quantity, cost, 0);
+    }
+
+    // Restores a history saved in a snapshot
+    void restore(int id, double average, int[] layerUnits, double[] layerCosts) {
+        ensure(id);
+        int n = layerUnits.length;
+        units[id] = Arrays.copyOf(layerUnits, Math.max(1, n));
+        costs[id] = Arrays.copyOf(layerCosts, Math.max(1, n));
+        head[id] = 0;
+        count[id] = n;
+        double value = 0;
+        for (int k = 0; k < n; k++)
+            value += layerUnits[k] * layerCosts[k];
+        fifoValue[id] = value;
+        averageCost[id] = average;
+    }
+
+    // quantityBefore is the stock on hand before these units arrive
+    void receive(int id, int received, double cost, long quantityBefore) {
+        if (received <= 0)
+            return;
+        averageCost[id] = quantityBefore <= 0 ? cost
+                : (averageCost[id] * quantityBefore + cost * received) / (quantityBefore + received);
+        fifoValue[id] += received * cost;
+        int n = count[id];
+        int[] u = units[id];
+        if (n > 0) {
+            int tail = (head[id] + n - 1) % u.length;
+            if (costs[id][tail] == cost && (long) u[tail] + received <= Integer.MAX_VALUE) {
+                u[tail] += received;
+                return;
+            }
+        }
+        if (n == u.length)
+            growRing(id);
+        int slot = (head[id] + n) % units[id].length;
+        units[id][slot] = received;
+        costs[id][slot] = cost;
+        count[id] = n + 1;
+    }
+
+    // Consumes the oldest layers; units beyond the recorded layers cost nothing
+    void issue(int id, int issued) {
+        int[] u = units[id];
+        double[] c = costs[id];
+        while (issued > 0 && count[id] > 0) {
+            int h = head[id];
+            int take = Math.min(issued, u[h]);
+            fifoValue[id] -= take * c[h];
+            u[h] -= take;
+            issued -= take;
+            if (u[h] == 0) {
+                head[id] = (h + 1) % u.length;
+                count[id]--;
+            }
+        }
+        if (count[id] == 0)
+            fifoValue[id] = 0; // drop accumulated rounding error
+    }
+
+    void remove(int id) {
+        units[id] = null;
+        costs[id] = null;
+        count[id] = 0;
+        fifoValue[id] = 0;
+        averageCost[id] = 0;
+    }
+
+    void clear() {
+        Arrays.fill(units, null);
+        Arrays.fill(costs, null);
+        Arrays.fill(count, 0);
+        Arrays.fill(fifoValue, 0);
+        Arrays.fill(averageCost, 0);
+    }
+
+    private void growRing(int id) {
+        int n = count[id], h = head[id];
+        int[] u = new int[Math.max(2, n * 2)];
+        double[] c = new double[u.length];
+        for (int k = 0; k < n; k++) {
+            u[k] = units[id][(h + k) % n];
+            c[k] = costs[id][(h + k) % n];
+        }
+        units[id] = u;
+        costs[id] = c;
+        head[id] = 0;
+    }
+
+    private void ensure(int id) {
+        if (id < units.length)
+            return;
+        int grown = Math.max(id + 1, units.length * 2);
+        units = Arrays.copyOf(units, grown);
+        costs = Arrays.copyOf(costs, grown);
+        head = Arrays.copyOf(head, grown);
+        count = Arrays.copyOf(count, grown);
+        fifoValue = Arrays.copyOf(fifoValue, grown);
+        averageCost = Arrays.copyOf(averageCost, grown);
+    }
+}
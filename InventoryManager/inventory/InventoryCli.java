@@ -0,0 +1,302 @@
+package inventory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Headless entry point for scripts and servers. Works on the snapshot and
+// journal in the current directory, the same files the desktop app uses. The
+// journal locks the directory, so while one of them runs (a server, say)
+// the others refuse to start rather than write over its journal.
+//
+//   serve [port] [threads] [host]
+//                            run the HTTP API (see InventoryServer); it has
+//                            no authentication, so it listens on loopback
+//                            unless given another address such as 0.0.0.0
+//   import <file>            add or overwrite items from sku,quantity,price lines
+//   apply <file>             apply op,sku,units[,cost] movement lines
+//   export <file>            write sku,quantity,reserved,price,threshold lines
+//   list [query]             print matching items
+//   low-stock                print reorder suggestions
+//   valuation                print FIFO and weighted-average totals
+//   snapshot                 fold the journal into a fresh snapshot
+public class InventoryCli {
+    static final int DEFAULT_PORT = 8080;
+    static final String DEFAULT_HOST = "127.0.0.1";
+    static final int DEFAULT_THREADS = 200;
+    static final long SNAPSHOT_EVERY_MS = 60_000;
+    // Movement lines applied (and synced) together
+    static final int APPLY_BATCH = 4096;
+
+    private final PrintStream out, err;
+    private InventoryJournal journal;
+    private InventoryService service;
+
+    InventoryCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    // Returns the process exit code
+    public static int run(String[] args) {
+        return new InventoryCli(System.out, System.err).execute(args);
+    }
+
+    int execute(String[] args) {
+        if (args.length == 0 || args[0].equals("help") || args[0].equals("--help")) {
+            usage(out);
+            return 0;
+        }
+        try {
+            InventoryStore store = new InventoryStore();
+            journal = InventoryJournal.open(Paths.get("."), store);
+            service = new InventoryService(store, journal);
+        } catch (IOException e) {
+            err.println("Could not restore saved inventory: " + e.getMessage());
+            return 1;
+        }
+        try {
+            switch (args[0]) {
+                case "serve":
+                    return serve(arg(args, 1, DEFAULT_PORT), arg(args, 2, DEFAULT_THREADS),
+                            args.length > 3 ? args[3] : DEFAULT_HOST);
+                case "import":
+                    return importFeed(file(args));
+                case "apply":
+                    return apply(file(args));
+                case "export":
+                    return export(file(args));
+                case "list":
+                    return list(args.length > 1 ? args[1] : "");
+                case "low-stock":
+                    return lowStock();
+                case "valuation":
+                    return valuation();
+                case "snapshot":
+                    snapshot();
+                    return 0;
+                default:
+                    err.println("Unknown command '" + args[0] + "'");
+                    usage(err);
+                    return 2;
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 2;
+        } catch (IOException | UncheckedIOException e) {
+            err.println("Error: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } finally {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                err.println("Error closing journal: " + e.getMessage());
+            }
+        }
+    }
+
+    private int serve(int port, int threads, String host) throws IOException, InterruptedException {
+        // Small JSON replies otherwise sit out the client's delayed ACK (~40 ms).
+        // The JDK server reads this once, so it is set before the first one.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        InventoryServer server = new InventoryServer(service, host, port, threads);
+        ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                if (journal.journalRecords() > 0)
+                    snapshot();
+            } catch (IOException | RuntimeException e) {
+                err.println("Snapshot failed: " + e.getMessage());
+            }
+        }, SNAPSHOT_EVERY_MS, SNAPSHOT_EVERY_MS, TimeUnit.MILLISECONDS);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        CountDownLatch drained = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopped.countDown();
+            try {
+                drained.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        server.start();
+        out.println("Serving " + service.store().size() + " items on " + host + ":" + server.port());
+        try {
+            stopped.await();
+            server.stop();
+            snapshots.shutdownNow();
+            if (journal.journalRecords() > 0)
+                snapshot();
+        } finally {
+            drained.countDown();
+        }
+        return 0;
+    }
+
+    private int importFeed(Path file) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            InventoryImport.Batch batch = InventoryImport.parse(file, pool, null);
+            int rejected = service.importItems(batch, null);
+            out.println("Imported " + (batch.count() - rejected) + " items from " + batch.lines() + " lines"
+                    + (batch.skipped() > 0 ? ", skipped " + batch.skipped() + " malformed" : "")
+                    + (rejected > 0 ? ", rejected " + rejected + " (below reserved stock)" : ""));
+            return 0;
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private int apply(Path file) throws IOException {
+        InventoryService.Movement[] kinds = new InventoryService.Movement[APPLY_BATCH];
+        String[] skus = new String[APPLY_BATCH];
+        int[] amounts = new int[APPLY_BATCH];
+        double[] costs = new double[APPLY_BATCH];
+        int n = 0, lineNo = 0;
+        long applied = 0, refused = 0, malformed = 0;
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank() || line.startsWith("#"))
+                    continue;
+                String[] parts = line.split(",");
+                try {
+                    if (parts.length < 3)
+                        throw new IllegalArgumentException();
+                    kinds[n] = InventoryService.Movement.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+                    skus[n] = parts[1].trim();
+                    amounts[n] = Integer.parseInt(parts[2].trim());
+                    costs[n] = parts.length > 3 ? Double.parseDouble(parts[3].trim()) : 0;
+                    InventoryService.checkMovement(kinds[n], amounts[n], costs[n]);
+                } catch (IllegalArgumentException e) {
+                    err.println("Line " + lineNo + ": cannot read '" + line + "'");
+                    malformed++;
+                    continue;
+                }
+                if (++n == APPLY_BATCH) {
+                    long ok = count(service.moveAll(kinds, skus, amounts, costs));
+                    applied += ok;
+                    refused += APPLY_BATCH - ok;
+                    n = 0;
+                }
+            }
+        }
+        if (n > 0) {
+            long ok = count(service.moveAll(Arrays.copyOf(kinds, n), Arrays.copyOf(skus, n),
+                    Arrays.copyOf(amounts, n), Arrays.copyOf(costs, n)));
+            applied += ok;
+            refused += n - ok;
+        }
+        out.println("Applied " + applied + " movements, refused " + refused
+                + (malformed > 0 ? ", skipped " + malformed + " malformed lines" : ""));
+        return refused > 0 || malformed > 0 ? 3 : 0;
+    }
+
+    private int export(Path file) throws IOException {
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            pw.println("Item,Quantity,Reserved,Price,Reorder At");
+            int rows = service.read(() -> {
+                InventoryStore store = service.store();
+                int[] ids = store.ids();
+                for (int id : ids) {
+                    int quantity, reserved;
+                    synchronized (service.stripe(id)) {
+                        quantity = store.quantity(id);
+                        reserved = store.reserved(id);
+                    }
+                    pw.println(store.name(id) + "," + quantity + "," + reserved + "," + store.price(id) + ","
+                            + store.threshold(id));
+                }
+                return ids.length;
+            });
+            if (pw.checkError())
+                throw new IOException("Could not write " + file);
+            out.println("Exported " + rows + " items to " + file);
+        }
+        return 0;
+    }
+
+    private int list(String query) {
+        service.read(() -> {
+            InventoryStore store = service.store();
+            for (int id : query.isEmpty() ? store.ids() : store.search(query))
+                out.println(store.name(id) + "\t" + store.quantity(id) + "\t" + store.reserved(id) + "\t"
+                        + store.price(id) + "\t" + store.threshold(id));
+            return null;
+        });
+        return 0;
+    }
+
+    private int lowStock() {
+        for (ReorderMonitor.Suggestion s : new ReorderMonitor(service).scan())
+            out.println(s.name + "\t" + s.quantity + "\t" + s.threshold + "\torder " + s.order);
+        return 0;
+    }
+
+    private int valuation() {
+        InventoryValuation v = InventoryValuation.run(service, ForkJoinPool.commonPool());
+        out.printf("Items: %d%nFIFO value: %.2f%nWeighted-average value: %.2f%n", v.size(), v.totalFifo(),
+                v.totalAverage());
+        return 0;
+    }
+
+    private synchronized void snapshot() throws IOException {
+        InventoryJournal.Compaction compaction = service.beginSnapshot();
+        compaction.run();
+    }
+
+    private static long count(boolean[] results) {
+        long n = 0;
+        for (boolean ok : results)
+            if (ok)
+                n++;
+        return n;
+    }
+
+    private static Path file(String[] args) {
+        if (args.length < 2)
+            throw new IllegalArgumentException("'" + args[0] + "' needs a file");
+        return Paths.get(args[1]);
+    }
+
+    private static int arg(String[] args, int i, int fallback) {
+        if (args.length <= i)
+            return fallback;
+        try {
+            return Integer.parseInt(args[i]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + args[i]);
+        }
+    }
+
+    private static void usage(PrintStream ps) {
+        ps.println("Usage: java InventoryManager <command> [args]");
+        ps.println("  serve [port] [threads] [host]");
+        ps.println("                           HTTP API on " + DEFAULT_HOST + ":" + DEFAULT_PORT
+                + " by default; give a host");
+        ps.println("                           such as 0.0.0.0 to accept other machines");
+        ps.println("  import <file>            add or overwrite items from sku,quantity,price lines");
+        ps.println("  apply <file>             apply op,sku,units[,cost] lines; op is adjust, receive,");
+        ps.println("                           reserve, release or fulfil");
+        ps.println("  export <file>            write all items as CSV");
+        ps.println("  list [query]             print items whose name contains query");
+        ps.println("  low-stock                print reorder suggestions");
+        ps.println("  valuation                print FIFO and weighted-average stock value");
+        ps.println("  snapshot                 fold the journal into a fresh snapshot");
+        ps.println("Without a command the desktop app starts.");
+    }
+}
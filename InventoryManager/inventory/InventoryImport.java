@@ -0,0 +1,266 @@
+package inventory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongConsumer;
+
+// Parses supplier feeds ("sku,quantity,price" per line) straight from
+// memory-mapped bytes. The file is split at newline boundaries, the pieces are
+// parsed in parallel, and duplicate SKUs are merged: quantities add up and the
+// last price in file order wins. The result is one Batch that
+// InventoryService.importItems applies in a single pass.
+public class InventoryImport {
+    static final long MIN_PIECE = 1 << 20;
+    static final long MAX_PIECE = 64L << 20;
+
+    // Distinct SKUs in first-seen order, plus line counts
+    public static class Batch {
+        String[] names = new String[1024];
+        long[] quantities = new long[1024];
+        double[] prices = new double[1024];
+        int count = 0;
+        int lines = 0, skipped = 0;
+        long bytes;
+        private final Map<String, Integer> slots = new HashMap<>();
+
+        public int count() {
+            return count;
+        }
+
+        // Well-formed lines, including those merged into an earlier SKU
+        public int lines() {
+            return lines;
+        }
+
+        public int skipped() {
+            return skipped;
+        }
+
+        // Read-only view of the distinct SKUs
+        public List<String> names() {
+            return new AbstractList<String>() {
+                public String get(int i) {
+                    return name(i);
+                }
+
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        public String name(int i) {
+            return names[i];
+        }
+
+        public long quantity(int i) {
+            return quantities[i];
+        }
+
+        public double price(int i) {
+            return prices[i];
+        }
+
+        void add(String name, long quantity, double price) {
+            Integer slot = slots.get(name);
+            if (slot != null) {
+                quantities[slot] += quantity;
+                prices[slot] = price;
+                return;
+            }
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+                quantities = Arrays.copyOf(quantities, count * 2);
+                prices = Arrays.copyOf(prices, count * 2);
+            }
+            names[count] = name;
+            quantities[count] = quantity;
+            prices[count] = price;
+            slots.put(name, count++);
+        }
+
+        // Folds a later piece of the file into this one
+        void merge(Batch later) {
+            for (int i = 0; i < later.count; i++)
+                add(later.names[i], later.quantities[i], later.prices[i]);
+            lines += later.lines;
+            skipped += later.skipped;
+            bytes += later.bytes;
+        }
+    }
+
+    // Parses the file on the given executor; progress, if given, receives the
+    // number of bytes parsed so far. Interrupting the caller cancels the parse.
+    public static Batch parse(Path file, ExecutorService executor, LongConsumer progress)
+            throws IOException, InterruptedException, ExecutionException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = split(channel, Runtime.getRuntime().availableProcessors() * 4);
+            List<Future<Batch>> parts = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long start = bounds[i], end = bounds[i + 1];
+                parts.add(executor.submit(() -> parse(channel, start, end)));
+            }
+            Batch result = new Batch();
+            try {
+                for (Future<Batch> part : parts) {
+                    result.merge(part.get());
+                    if (progress != null)
+                        progress.accept(result.bytes);
+                }
+            } finally {
+                for (Future<Batch> part : parts)
+                    part.cancel(true);
+            }
+            result.slots.clear();
+            return result;
+        }
+    }
+
+    // Piece boundaries: pieces of about size / parts bytes, each cut moved
+    // forward to just past a newline so that no line spans two pieces
+    static long[] split(FileChannel channel, int parts) throws IOException {
+        long size = channel.size();
+        if (size == 0)
+            return new long[] { 0 };
+        long piece = Math.max(MIN_PIECE, Math.min(MAX_PIECE, size / Math.max(1, parts)));
+        long[] bounds = new long[(int) (size / piece) + 2];
+        int count = 1;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (long cut = lineAfter(channel, piece, probe); cut < size; cut = lineAfter(channel, cut + piece, probe))
+            bounds[count++] = cut;
+        bounds[count++] = size;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    // Offset just past the first newline at or after from, or the file size
+    private static long lineAfter(FileChannel channel, long from, ByteBuffer probe) throws IOException {
+        int n;
+        for (probe.clear(); (n = channel.read(probe, from)) > 0; probe.clear()) {
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n')
+                    return from + i + 1;
+            }
+            from += n;
+        }
+        return channel.size();
+    }
+
+    // One piece of the feed. Blank lines are ignored; a line that does not
+    // parse is counted as skipped unless it is the feed's first, which is
+    // taken to be a header.
+    static Batch parse(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        Batch batch = new Batch();
+        batch.bytes = end - start;
+        int limit = buf.limit();
+        for (int from = 0, i = 0; i <= limit; i++) {
+            if (i < limit && buf.get(i) != '\n')
+                continue;
+            if (Thread.currentThread().isInterrupted())
+                return batch;
+            int to = i;
+            while (to > from && isSpace(buf.get(to - 1)))
+                to--;
+            if (to > from) {
+                if (parseLine(buf, from, to, batch))
+                    batch.lines++;
+                else if (start + from != 0)
+                    batch.skipped++;
+            }
+            from = i + 1;
+        }
+        return batch;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == '\r' || b == ' ' || b == '\t';
+    }
+
+    private static boolean parseLine(MappedByteBuffer buf, int from, int to, Batch batch) {
+        int c1 = indexOf(buf, from, to, (byte) ',');
+        if (c1 <= from)
+            return false;
+        int c2 = indexOf(buf, c1 + 1, to, (byte) ',');
+        if (c2 < 0 || indexOf(buf, c2 + 1, to, (byte) ',') >= 0)
+            return false;
+        long quantity = parseQuantity(buf, c1 + 1, c2);
+        double price = parsePrice(buf, c2 + 1, to);
+        if (quantity < 0 || Double.isNaN(price) || c1 - from > InventoryStore.MAX_NAME_BYTES)
+            return false;
+        byte[] bytes = new byte[c1 - from];
+        for (int k = 0; k < bytes.length; k++)
+            bytes[k] = buf.get(from + k);
+        String name = new String(bytes, StandardCharsets.UTF_8);
+        // Malformed bytes decode to U+FFFD, three bytes each when journaled
+        if (bytes.length > InventoryStore.MAX_NAME_BYTES / 3
+                && name.getBytes(StandardCharsets.UTF_8).length > InventoryStore.MAX_NAME_BYTES)
+            return false;
+        batch.add(name, quantity, price);
+        return true;
+    }
+
+    private static int indexOf(MappedByteBuffer buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++)
+            if (buf.get(i) == b)
+                return i;
+        return -1;
+    }
+
+    // Non-negative integer below Integer.MAX_VALUE; -1 if malformed
+    static long parseQuantity(ByteBuffer buf, int from, int to) {
+        while (from < to && buf.get(from) == ' ')
+            from++;
+        while (to > from && buf.get(to - 1) == ' ')
+            to--;
+        if (from == to || to - from > 10)
+            return -1;
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9)
+                return -1;
+            v = v * 10 + d;
+        }
+        return v <= Integer.MAX_VALUE ? v : -1;
+    }
+
+    // Plain decimals ("12", "12.5", "0.99"); NaN if malformed. Feed prices
+    // are almost always whole cents, which parse as a long: dividing that by
+    // 100 rounds once, to the same double Double.parseDouble gives. Anything
+    // else goes through Double.parseDouble.
+    static double parsePrice(ByteBuffer buf, int from, int to) {
+        while (from < to && buf.get(from) == ' ')
+            from++;
+        while (to > from && buf.get(to - 1) == ' ')
+            to--;
+        long cents = 0;
+        int dot = -1;
+        for (int i = from; i < to; i++) {
+            byte b = buf.get(i);
+            if (b == '.' && dot < 0)
+                dot = i;
+            else if (b < '0' || b > '9')
+                return Double.NaN;
+            else if (cents < 1L << 50)
+                cents = cents * 10 + (b - '0');
+        }
+        int decimals = dot < 0 ? 0 : to - dot - 1;
+        if (to - from == (dot < 0 ? 0 : 1))
+            return Double.NaN; // no digits
+        if (decimals <= 2 && cents < 1L << 46) {
+            for (int d = decimals; d < 2; d++)
+                cents *= 10;
+            return cents / 100.0;
+        }
+        byte[] text = new byte[to - from];
+        for (int k = 0; k < text.length; k++)
+            text[k] = buf.get(from + k);
+        return Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,550 @@
+package inventory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Write-ahead log for an InventoryStore: a checksummed snapshot (inventory.dat)
+// plus append-only journals (inventory.journal.<generation>). Every change is
+// logged as one binary record; a snapshot folds the journals into a new
+// inventory.dat written to a temp file and renamed into place.
+//
+// Records are buffered by log calls and made durable by sync(seq). Whichever
+// caller finds no flush running writes out everything buffered so far and
+// forces it once, so concurrent writers share one fsync (group commit).
+//
+// Snapshot: "INVS" | version | generation | count | items | crc32
+//           item = len name quantity reserved threshold price averageCost
+//                  layerCount (units cost)*   (version 2 stops after price,
+//                                              version 1 has no threshold)
+// Journal:  "INVJ" | version | generation, then records: type len body crc32
+//           'A' name quantity price          (add)
+//           'U' oldName name quantity price  (update)
+//           'D' name                         (delete)
+//           'S' name quantity reserved       (stock movement)
+//           'T' name threshold               (reorder threshold, version 2)
+//           'R' name units unitCost          (costed receipt, version 3)
+//           'C'                              (clear)
+// Recovery reads the snapshot, then replays journals newer than its generation
+// in order, stopping at the first torn or corrupt record.
+//
+// One journal owns a directory at a time: open() takes a lock on
+// inventory.lock that close() releases, so a second process fails to open
+// rather than overwriting journals the first is writing. A generation's file
+// is created on its first write, so opening and reading creates nothing.
+public class InventoryJournal {
+    static final int SNAPSHOT_MAGIC = 0x494E5653; // "INVS"
+    static final int JOURNAL_MAGIC = 0x494E564A; // "INVJ"
+    static final int VERSION = 3; // older versions are still read
+    public static final String SNAPSHOT = "inventory.dat";
+    static final String JOURNAL_PREFIX = "inventory.journal.";
+    static final String LOCK = "inventory.lock";
+
+    private final Path dir;
+    private final FileChannel lockFile;
+    private long generation;
+    private FileChannel journal; // null until the generation's first write
+    private long journalRecords = 0;
+    private final CRC32 crc = new CRC32();
+
+    // Group commit state, guarded by this
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+    private int recordStart;
+    private long appended = 0, durable = 0;
+    private boolean flushing = false;
+    private IOException failure;
+
+    private InventoryJournal(Path dir, FileChannel lockFile) {
+        this.dir = dir;
+        this.lockFile = lockFile;
+    }
+
+    // Locks dir, restores the store from it and starts a fresh journal
+    // generation
+    public static InventoryJournal open(Path dir, InventoryStore store) throws IOException {
+        FileChannel lockFile = FileChannel.open(dir.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = lockFile.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null)
+                throw new IOException("inventory in " + dir.toAbsolutePath().normalize()
+                        + " is in use by another program");
+            InventoryJournal j = new InventoryJournal(dir, lockFile);
+            Path snapshot = dir.resolve(SNAPSHOT);
+            long covered = Files.exists(snapshot) ? readSnapshot(snapshot, store) : 0;
+            long last = covered;
+            for (long gen : journalGenerations(dir)) {
+                if (gen > covered)
+                    replay(dir.resolve(JOURNAL_PREFIX + gen), store);
+                last = Math.max(last, gen);
+            }
+            j.startJournal(last + 1);
+            return j;
+        } catch (IOException | RuntimeException e) {
+            lockFile.close();
+            throw e;
+        }
+    }
+
+    public synchronized long journalRecords() {
+        return journalRecords;
+    }
+
+    // The log methods buffer one record and return its sequence number
+
+    synchronized long logAdd(String name, int quantity, double price) {
+        byte[] n = utf8(name);
+        ByteBuffer body = begin('A', 2 + n.length + 4 + 8);
+        body.putShort((short) n.length).put(n).putInt(quantity).putDouble(price);
+        return end(body);
+    }
+
+    synchronized long logUpdate(String oldName, String name, int quantity, double price) {
+        byte[] o = utf8(oldName), n = utf8(name);
+        ByteBuffer body = begin('U', 2 + o.length + 2 + n.length + 4 + 8);
+        body.putShort((short) o.length).put(o).putShort((short) n.length).put(n).putInt(quantity).putDouble(price);
+        return end(body);
+    }
+
+    synchronized long logDelete(String name) {
+        byte[] n = utf8(name);
+        ByteBuffer body = begin('D', 2 + n.length);
+        body.putShort((short) n.length).put(n);
+        return end(body);
+    }
+
+    synchronized long logStock(String name, int quantity, int reserved) {
+        byte[] n = utf8(name);
+        ByteBuffer body = begin('S', 2 + n.length + 4 + 4);
+        body.putShort((short) n.length).put(n).putInt(quantity).putInt(reserved);
+        return end(body);
+    }
+
+    synchronized long logThreshold(String name, int threshold) {
+        byte[] n = utf8(name);
+        ByteBuffer body = begin('T', 2 + n.length + 4);
+        body.putShort((short) n.length).put(n).putInt(threshold);
+        return end(body);
+    }
+
+    synchronized long logReceive(String name, int units, double unitCost) {
+        byte[] n = utf8(name);
+        ByteBuffer body = begin('R', 2 + n.length + 4 + 8);
+        body.putShort((short) n.length).put(n).putInt(units).putDouble(unitCost);
+        return end(body);
+    }
+
+    synchronized long logClear() {
+        return end(begin('C', 0));
+    }
+
+    private ByteBuffer begin(char type, int length) {
+        int needed = 1 + 4 + length + 4;
+        if (pending.remaining() < needed) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+            pending.flip();
+            pending = grown.put(pending);
+        }
+        recordStart = pending.position();
+        pending.put((byte) type).putInt(length);
+        return pending;
+    }
+
+    private long end(ByteBuffer record) {
+        crc.reset();
+        crc.update(record.array(), recordStart, record.position() - recordStart);
+        record.putInt((int) crc.getValue());
+        journalRecords++;
+        return ++appended;
+    }
+
+    private static byte[] utf8(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > InventoryStore.MAX_NAME_BYTES)
+            throw new IllegalArgumentException("Item name too long");
+        return bytes;
+    }
+
+    // Blocks until the record with sequence number seq is on disk
+    public void sync(long seq) throws IOException {
+        ByteBuffer batch;
+        long target;
+        synchronized (this) {
+            while (true) {
+                if (failure != null)
+                    throw new IOException("Journal write failed", failure);
+                if (durable >= seq)
+                    return;
+                if (!flushing)
+                    break;
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for journal", e);
+                }
+            }
+            // Become the leader: take everything buffered so far
+            flushing = true;
+            batch = pending;
+            pending = writing;
+            writing = batch;
+            target = appended;
+        }
+        IOException error = null;
+        try {
+            if (journal == null)
+                journal = createJournal(generation);
+            batch.flip();
+            while (batch.hasRemaining())
+                journal.write(batch);
+            journal.force(false);
+        } catch (IOException e) {
+            error = e;
+        }
+        synchronized (this) {
+            batch.clear();
+            flushing = false;
+            if (error != null)
+                failure = error;
+            else
+                durable = target;
+            notifyAll();
+        }
+        if (error != null)
+            throw error;
+    }
+
+    // Flushes and rotates the journal and copies the items to snapshot. The
+    // caller must keep the store from changing until this returns (the service
+    // holds its write lock); run() the result on any thread.
+    public Compaction beginCompaction(InventoryStore store) throws IOException {
+        long seq;
+        synchronized (this) {
+            seq = appended;
+        }
+        sync(seq);
+        long covered;
+        synchronized (this) {
+            covered = generation;
+            startJournal(generation + 1);
+        }
+        return new Compaction(Items.copyOf(store), covered);
+    }
+
+    public class Compaction {
+        private final Items items;
+        private final long generation;
+
+        Compaction(Items items, long generation) {
+            this.items = items;
+            this.generation = generation;
+        }
+
+        public int itemCount() {
+            return items.names.length;
+        }
+
+        public void run() throws IOException {
+            writeSnapshot(dir, items, generation);
+            for (long gen : journalGenerations(dir)) {
+                if (gen <= generation)
+                    Files.deleteIfExists(dir.resolve(JOURNAL_PREFIX + gen));
+            }
+        }
+    }
+
+    // Copy of every live item, taken while the store is not changing
+    static class Items {
+        String[] names;
+        int[] quantities, reserved, thresholds;
+        double[] prices, averageCosts;
+        int[][] layerUnits;
+        double[][] layerCosts;
+
+        static Items copyOf(InventoryStore store) {
+            int[] ids = store.ids();
+            int n = ids.length;
+            Items items = new Items();
+            items.names = new String[n];
+            items.quantities = new int[n];
+            items.reserved = new int[n];
+            items.thresholds = new int[n];
+            items.prices = new double[n];
+            items.averageCosts = new double[n];
+            items.layerUnits = new int[n][];
+            items.layerCosts = new double[n][];
+            CostLayers layers = store.costLayers();
+            for (int i = 0; i < n; i++) {
+                int id = ids[i];
+                items.names[i] = store.name(id);
+                items.quantities[i] = store.quantity(id);
+                items.reserved[i] = store.reserved(id);
+                items.thresholds[i] = store.threshold(id);
+                items.prices[i] = store.price(id);
+                items.averageCosts[i] = layers.averageCost(id);
+                int count = layers.layers(id);
+                items.layerUnits[i] = new int[count];
+                items.layerCosts[i] = new double[count];
+                for (int k = 0; k < count; k++) {
+                    items.layerUnits[i][k] = layers.layerUnits(id, k);
+                    items.layerCosts[i][k] = layers.layerCost(id, k);
+                }
+            }
+            return items;
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            if (journal != null)
+                journal.close();
+        } finally {
+            // Closing the channel releases the lock
+            lockFile.close();
+        }
+    }
+
+    // Moves on to generation gen; its file is created by the first sync
+    private void startJournal(long gen) throws IOException {
+        if (journal != null)
+            journal.close();
+        journal = null;
+        generation = gen;
+        journalRecords = 0;
+    }
+
+    // Never reuses a file: one already there belongs to someone else
+    private FileChannel createJournal(long gen) throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(JOURNAL_PREFIX + gen),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putInt(JOURNAL_MAGIC).putInt(VERSION).putLong(gen).flip();
+            while (header.hasRemaining())
+                channel.write(header);
+            channel.force(false);
+            syncDirectory(dir);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static long[] journalGenerations(Path dir) throws IOException {
+        List<Long> gens = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, JOURNAL_PREFIX + "*")) {
+            for (Path file : files) {
+                try {
+                    gens.add(Long.parseLong(file.getFileName().toString().substring(JOURNAL_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        long[] result = new long[gens.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = gens.get(i);
+        Arrays.sort(result);
+        return result;
+    }
+
+    static void writeSnapshot(Path dir, Items items, long generation) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+        CRC32 sum = new CRC32();
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 17); // fits the longest name
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buf.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putLong(generation).putInt(items.names.length);
+            for (int i = 0; i < items.names.length; i++) {
+                byte[] name = utf8(items.names[i]);
+                if (buf.remaining() < 2 + name.length + 4 + 4 + 4 + 8 + 8 + 4)
+                    flush(out, buf, sum);
+                buf.putShort((short) name.length).put(name).putInt(items.quantities[i]).putInt(items.reserved[i])
+                        .putInt(items.thresholds[i]).putDouble(items.prices[i]).putDouble(items.averageCosts[i])
+                        .putInt(items.layerUnits[i].length);
+                for (int k = 0; k < items.layerUnits[i].length; k++) {
+                    if (buf.remaining() < 4 + 8)
+                        flush(out, buf, sum);
+                    buf.putInt(items.layerUnits[i][k]).putDouble(items.layerCosts[i][k]);
+                }
+            }
+            flush(out, buf, sum);
+            buf.putInt((int) sum.getValue()).flip();
+            while (buf.hasRemaining())
+                out.write(buf);
+            out.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Until the rename is on disk a crash could bring back the old
+        // snapshot after the journals it covers are deleted
+        syncDirectory(dir);
+    }
+
+    static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory to force it
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buf, CRC32 sum) throws IOException {
+        buf.flip();
+        sum.update(buf.duplicate());
+        while (buf.hasRemaining())
+            out.write(buf);
+        buf.clear();
+    }
+
+    // Bulk-reads a snapshot into the store and returns its generation
+    static long readSnapshot(Path file, InventoryStore store) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < 4 + 4 + 8 + 4 + 4 || size > Integer.MAX_VALUE)
+                throw new IOException(file + ": not a valid snapshot");
+            ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 sum = new CRC32();
+            ByteBuffer body = buf.duplicate();
+            body.limit((int) size - 4);
+            sum.update(body);
+            if ((int) sum.getValue() != buf.getInt((int) size - 4))
+                throw new IOException(file + ": checksum mismatch");
+            int magic = buf.getInt(), version = buf.getInt();
+            if (magic != SNAPSHOT_MAGIC || version < 1 || version > VERSION)
+                throw new IOException(file + ": unsupported snapshot format");
+            long generation = buf.getLong();
+            int count = buf.getInt();
+            for (int i = 0; i < count; i++) {
+                String name = readName(buf);
+                int quantity = buf.getInt();
+                int reserved = buf.getInt();
+                int threshold = version >= 2 ? buf.getInt() : 0;
+                int id = store.add(name, quantity, buf.getDouble());
+                if (version >= 3) {
+                    double average = buf.getDouble();
+                    int[] units = new int[buf.getInt()];
+                    double[] costs = new double[units.length];
+                    for (int k = 0; k < units.length; k++) {
+                        units[k] = buf.getInt();
+                        costs[k] = buf.getDouble();
+                    }
+                    store.costLayers().restore(id, average, units, costs);
+                }
+                store.setStock(id, quantity, reserved);
+                if (threshold > 0)
+                    store.setThreshold(id, threshold);
+            }
+            if (buf.remaining() != 4)
+                throw new IOException(file + ": item count does not match file size");
+            return generation;
+        } catch (RuntimeException e) {
+            throw new IOException(file + ": corrupt snapshot (" + e.getMessage() + ")");
+        }
+    }
+
+    // Replays a journal; a torn or corrupt tail ends the replay
+    static int replay(Path file, InventoryStore store) throws IOException {
+        int replayed = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < 16 || size > Integer.MAX_VALUE)
+                return 0;
+            ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int magic = buf.getInt(), version = buf.getInt();
+            if (magic != JOURNAL_MAGIC || version < 1 || version > VERSION)
+                throw new IOException(file + ": unsupported journal format");
+            buf.getLong();
+            CRC32 sum = new CRC32();
+            while (buf.remaining() >= 1 + 4 + 4) {
+                int start = buf.position();
+                int len = buf.getInt(start + 1);
+                if (len < 0 || buf.remaining() < 1 + 4 + len + 4)
+                    break;
+                ByteBuffer rec = buf.duplicate();
+                rec.limit(start + 1 + 4 + len);
+                sum.reset();
+                sum.update(rec);
+                if ((int) sum.getValue() != buf.getInt(start + 1 + 4 + len))
+                    break;
+                byte type = buf.get();
+                buf.getInt();
+                try {
+                    apply(type, buf, store);
+                } catch (RuntimeException e) {
+                    throw new IOException(file + ": record " + replayed + " does not apply (" + e.getMessage() + ")");
+                }
+                buf.getInt();
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    private static void apply(byte type, ByteBuffer buf, InventoryStore store) {
+        switch (type) {
+            case 'A': {
+                String name = readName(buf);
+                int quantity = buf.getInt();
+                double price = buf.getDouble();
+                int id = store.find(name);
+                if (id == -1)
+                    store.add(name, quantity, price);
+                else
+                    store.update(id, name, quantity, price);
+                break;
+            }
+            case 'U': {
+                String oldName = readName(buf);
+                String name = readName(buf);
+                int quantity = buf.getInt();
+                double price = buf.getDouble();
+                store.update(store.find(oldName), name, quantity, price);
+                break;
+            }
+            case 'D':
+                store.delete(store.find(readName(buf)));
+                break;
+            case 'S': {
+                int id = store.find(readName(buf));
+                int quantity = buf.getInt();
+                store.setStock(id, quantity, buf.getInt());
+                break;
+            }
+            case 'T': {
+                int id = store.find(readName(buf));
+                store.setThreshold(id, buf.getInt());
+                break;
+            }
+            case 'R': {
+                int id = store.find(readName(buf));
+                int units = buf.getInt();
+                store.receive(id, units, buf.getDouble());
+                break;
+            }
+            case 'C':
+                store.clear();
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record '" + (char) type + "'");
+        }
+    }
+
+    private static String readName(ByteBuffer buf) {
+        byte[] name = new byte[buf.getShort() & 0xFFFF];
+        buf.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,295 @@
+package inventory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Small JSON API over an InventoryService on the JDK's built-in HTTP server.
+//
+//   GET  /items?q=text&limit=n   items whose name contains text (all if absent)
+//   GET  /items/<sku>            one item
+//   POST /items                  {"sku", "quantity", "price", "threshold"?}
+//   POST /stock                  [{"op", "sku", "units", "cost"?}, ...]
+//                                op is adjust/receive/reserve/release/fulfil;
+//                                the batch is synced once, results in order
+//   GET  /low-stock              reorder suggestions, most urgent first
+//   GET  /valuation              FIFO and weighted-average totals
+//
+// Requests run on a fixed pool of platform threads. Handlers mostly wait on
+// stripe locks and the journal's group commit, so the pool is sized well past
+// the core count to keep many requests sharing each fsync. The JDK server
+// leaves Nagle's algorithm on unless sun.net.httpserver.nodelay is true,
+// which a caller that wants low latency sets before creating one (see
+// InventoryCli's serve).
+public class InventoryServer {
+    static final int MAX_BODY = 16 << 20;
+
+    private final InventoryService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public InventoryServer(InventoryService service, String host, int port, int threads) throws IOException {
+        this.service = service;
+        server = HttpServer.create(new InetSocketAddress(host, port), 4096);
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "inventory-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/items", this::items);
+        server.createContext("/stock", this::stock);
+        server.createContext("/low-stock", this::lowStock);
+        server.createContext("/valuation", this::valuation);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    private void items(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            String path = ex.getRequestURI().getPath();
+            String method = ex.getRequestMethod();
+            if (path.startsWith("/items/") && path.length() > "/items/".length()) {
+                if (!method.equals("GET"))
+                    return reply(ex, 405, error("Use GET"));
+                String sku = URLDecoder.decode(path.substring("/items/".length()), StandardCharsets.UTF_8);
+                StringBuilder out = new StringBuilder();
+                boolean found = service.read(() -> {
+                    int id = service.store().find(sku);
+                    if (id == -1)
+                        return false;
+                    item(out, id);
+                    return true;
+                });
+                return found ? reply(ex, 200, out) : reply(ex, 404, error("No item '" + sku + "'"));
+            }
+            if (method.equals("GET")) {
+                Map<String, String> query = query(ex);
+                String q = query.getOrDefault("q", "");
+                int limit = Integer.parseInt(query.getOrDefault("limit", "1000"));
+                StringBuilder out = new StringBuilder();
+                service.read(() -> {
+                    InventoryStore store = service.store();
+                    int[] ids = q.isEmpty() ? store.ids() : store.search(q);
+                    out.append("{\"count\":").append(ids.length).append(",\"items\":[");
+                    for (int i = 0; i < Math.min(limit, ids.length); i++) {
+                        if (i > 0)
+                            out.append(',');
+                        item(out, ids[i]);
+                    }
+                    return out.append("]}");
+                });
+                return reply(ex, 200, out);
+            }
+            if (method.equals("POST")) {
+                Map<?, ?> body = object(Json.parse(body(ex)));
+                String sku = text(body, "sku");
+                InventoryStore.checkName(sku);
+                int quantity = integer(body, "quantity");
+                double price = number(body, "price");
+                int threshold = body.get("threshold") != null ? integer(body, "threshold") : 0;
+                int id = service.add(sku, quantity, price, threshold);
+                StringBuilder out = new StringBuilder();
+                service.read(() -> {
+                    item(out, id);
+                    return null;
+                });
+                return reply(ex, 201, out);
+            }
+            return reply(ex, 405, error("Use GET or POST"));
+        });
+    }
+
+    private void stock(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            if (!ex.getRequestMethod().equals("POST"))
+                return reply(ex, 405, error("Use POST"));
+            Object parsed = Json.parse(body(ex));
+            List<?> ops = parsed instanceof List ? (List<?>) parsed : List.of(parsed);
+            int n = ops.size();
+            InventoryService.Movement[] kinds = new InventoryService.Movement[n];
+            String[] skus = new String[n];
+            int[] amounts = new int[n];
+            double[] costs = new double[n];
+            for (int i = 0; i < n; i++) {
+                Map<?, ?> op = object(ops.get(i));
+                try {
+                    kinds[i] = InventoryService.Movement.valueOf(text(op, "op").toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown op '" + op.get("op") + "'");
+                }
+                skus[i] = text(op, "sku");
+                amounts[i] = integer(op, "units");
+                costs[i] = kinds[i] == InventoryService.Movement.RECEIVE ? number(op, "cost") : 0;
+                try {
+                    InventoryService.checkMovement(kinds[i], amounts[i], costs[i]);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Operation " + i + ": " + e.getMessage());
+                }
+            }
+            boolean[] results = service.moveAll(kinds, skus, amounts, costs);
+            StringBuilder out = new StringBuilder("{\"results\":[");
+            int applied = 0;
+            for (int i = 0; i < n; i++) {
+                if (i > 0)
+                    out.append(',');
+                out.append(results[i]);
+                if (results[i])
+                    applied++;
+            }
+            out.append("],\"applied\":").append(applied).append('}');
+            return reply(ex, 200, out);
+        });
+    }
+
+    private void lowStock(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            StringBuilder out = new StringBuilder("[");
+            List<ReorderMonitor.Suggestion> suggestions = new ReorderMonitor(service).scan();
+            for (int i = 0; i < suggestions.size(); i++) {
+                ReorderMonitor.Suggestion s = suggestions.get(i);
+                if (i > 0)
+                    out.append(',');
+                out.append("{\"sku\":");
+                Json.string(out, s.name);
+                out.append(",\"quantity\":").append(s.quantity).append(",\"threshold\":").append(s.threshold)
+                        .append(",\"order\":").append(s.order).append('}');
+            }
+            return reply(ex, 200, out.append(']'));
+        });
+    }
+
+    private void valuation(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            InventoryValuation v = InventoryValuation.run(service, ForkJoinPool.commonPool());
+            StringBuilder out = new StringBuilder("{\"items\":").append(v.size()).append(",\"fifo\":");
+            Json.number(out, v.totalFifo());
+            out.append(",\"weightedAverage\":");
+            Json.number(out, v.totalAverage());
+            return reply(ex, 200, out.append('}'));
+        });
+    }
+
+    // Caller holds the service's read lock
+    private void item(StringBuilder out, int id) {
+        InventoryStore store = service.store();
+        int quantity, reserved;
+        synchronized (service.stripe(id)) {
+            quantity = store.quantity(id);
+            reserved = store.reserved(id);
+        }
+        out.append("{\"sku\":");
+        Json.string(out, store.name(id));
+        out.append(",\"quantity\":").append(quantity).append(",\"reserved\":").append(reserved)
+                .append(",\"available\":").append(quantity - reserved).append(",\"threshold\":")
+                .append(store.threshold(id)).append(",\"price\":");
+        Json.number(out, store.price(id));
+        out.append(",\"averageCost\":");
+        Json.number(out, store.averageCost(id));
+        out.append('}');
+    }
+
+    private interface Handler {
+        Void run() throws IOException;
+    }
+
+    // Maps bad input to 400 and anything else unexpected to 500
+    private static void handle(HttpExchange ex, Handler handler) throws IOException {
+        try {
+            handler.run();
+        } catch (IllegalArgumentException | ClassCastException e) {
+            reply(ex, 400, error(e.getMessage()));
+        } catch (UncheckedIOException e) {
+            reply(ex, 500, error("Journal write failed: " + e.getCause().getMessage()));
+        } catch (RuntimeException e) {
+            reply(ex, 500, error(String.valueOf(e)));
+        } finally {
+            ex.close();
+        }
+    }
+
+    private static Void reply(HttpExchange ex, int status, CharSequence json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+        return null;
+    }
+
+    private static StringBuilder error(String message) {
+        StringBuilder out = new StringBuilder("{\"error\":");
+        Json.string(out, message == null ? "Bad request" : message);
+        return out.append('}');
+    }
+
+    private static String body(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY + 1);
+            if (bytes.length > MAX_BODY)
+                throw new IllegalArgumentException("Request body too large");
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> params = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null)
+            return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static Map<?, ?> object(Object value) {
+        if (!(value instanceof Map))
+            throw new IllegalArgumentException("Expected a JSON object");
+        return (Map<?, ?>) value;
+    }
+
+    private static String text(Map<?, ?> map, String key) {
+        Object value = map.get(key);
+        if (!(value instanceof String) || ((String) value).isEmpty())
+            throw new IllegalArgumentException("Missing \"" + key + "\"");
+        return (String) value;
+    }
+
+    private static double number(Map<?, ?> map, String key) {
+        Object value = map.get(key);
+        if (!(value instanceof Double))
+            throw new IllegalArgumentException("Missing number \"" + key + "\"");
+        return (Double) value;
+    }
+
+    private static int integer(Map<?, ?> map, String key) {
+        double v = number(map, key);
+        if (v != Math.rint(v) || v < Integer.MIN_VALUE || v > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("\"" + key + "\" must be a whole number");
+        return (int) v;
+    }
+}
@@ -0,0 +1,437 @@
+package inventory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+// Thread-safe front for an InventoryStore, so several terminals can move stock
+// at once. Adding, renaming and deleting items take the write lock. Stock
+// movements take the read lock plus one of a fixed set of stripe locks picked
+// by item id, so movements on different items rarely contend. Every movement
+// checks and writes quantity and reservations under the same stripe, so stock
+// on hand never drops below what is reserved and a reservation never exceeds
+// what is available.
+//
+// With a journal, each change is logged while its locks are held (so the log
+// order matches the order changes were applied) and then synced after the
+// locks are released, letting concurrent callers share one fsync. A change
+// only returns once it is durable; a failed journal write surfaces as an
+// UncheckedIOException.
+public class InventoryService {
+    private static final int STRIPES = 64; // power of two
+    private static final int SYNC_EVERY = 1 << 16;
+
+    private final InventoryStore store;
+    private final InventoryJournal journal; // may be null
+    private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+    private final Object[] stripes = new Object[STRIPES];
+
+    public InventoryService(InventoryStore store) {
+        this(store, null);
+    }
+
+    public InventoryService(InventoryStore store, InventoryJournal journal) {
+        this.store = store;
+        this.journal = journal;
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Object();
+    }
+
+    public InventoryStore store() {
+        return store;
+    }
+
+    public int add(String name, int quantity, double price) {
+        return add(name, quantity, price, 0);
+    }
+
+    // Adds an item together with its reorder threshold (0 for none), so a bad
+    // threshold leaves nothing behind
+    public int add(String name, int quantity, double price, int threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Threshold must not be negative");
+        int id;
+        long seq = 0;
+        structure.writeLock().lock();
+        try {
+            id = store.add(name, quantity, price);
+            if (journal != null)
+                seq = journal.logAdd(name, quantity, price);
+            if (threshold > 0) {
+                store.setThreshold(id, threshold);
+                if (journal != null)
+                    seq = journal.logThreshold(name, threshold);
+            }
+        } finally {
+            structure.writeLock().unlock();
+        }
+        sync(seq);
+        return id;
+    }
+
+    public void update(int id, String name, int quantity, double price) {
+        long seq = 0;
+        structure.writeLock().lock();
+        try {
+            String oldName = store.exists(id) ? store.name(id) : null;
+            store.update(id, name, quantity, price);
+            if (journal != null)
+                seq = journal.logUpdate(oldName, name, quantity, price);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        sync(seq);
+    }
+
+    public void delete(int id) {
+        long seq = 0;
+        structure.writeLock().lock();
+        try {
+            String name = store.exists(id) ? store.name(id) : null;
+            store.delete(id);
+            if (journal != null)
+                seq = journal.logDelete(name);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        sync(seq);
+    }
+
+    public void clear() {
+        long seq = 0;
+        structure.writeLock().lock();
+        try {
+            store.clear();
+            if (journal != null)
+                seq = journal.logClear();
+        } finally {
+            structure.writeLock().unlock();
+        }
+        sync(seq);
+    }
+
+    // Adds or overwrites every item in the batch under one write lock, syncing
+    // the journal every SYNC_EVERY items rather than per item. Items whose new
+    // quantity would fall below their reserved units (or overflow) are left
+    // alone; returns how many. progress, if given, receives items applied so far.
+    public int importItems(InventoryImport.Batch batch, IntConsumer progress) {
+        int rejected = 0;
+        structure.writeLock().lock();
+        try {
+            long seq = 0;
+            for (int i = 0; i < batch.count(); i++) {
+                String name = batch.name(i);
+                long quantity = batch.quantity(i);
+                double price = batch.price(i);
+                int id = store.find(name);
+                if (quantity > Integer.MAX_VALUE || (id != -1 && quantity < store.reserved(id))) {
+                    rejected++;
+                    continue;
+                }
+                if (id == -1) {
+                    store.add(name, (int) quantity, price);
+                    if (journal != null)
+                        seq = journal.logAdd(name, (int) quantity, price);
+                } else {
+                    store.update(id, name, (int) quantity, price);
+                    if (journal != null)
+                        seq = journal.logUpdate(name, name, (int) quantity, price);
+                }
+                if ((i + 1) % SYNC_EVERY == 0) {
+                    sync(seq);
+                    if (progress != null)
+                        progress.accept(i + 1);
+                }
+            }
+            sync(seq);
+            if (progress != null)
+                progress.accept(batch.count());
+        } finally {
+            structure.writeLock().unlock();
+        }
+        return rejected;
+    }
+
+    // Moves each named item from one state to another under one write lock,
+    // syncing like importItems, for UndoHistory. Only the fields that differ
+    // between from and to are written, so stock moved in the meantime is kept.
+    // An item going to ABSENT is deleted, unless more units are reserved on it
+    // than in from, which another terminal must have done and which must not
+    // be lost; one coming from ABSENT is created with its reserved units,
+    // unless renames maps its name to the name it currently has, in which
+    // case that item is renamed. Returns how many items could not be changed.
+    int restore(String[] names, UndoHistory.Item[] from, UndoHistory.Item[] to, Map<String, String> renames) {
+        int failed = 0;
+        structure.writeLock().lock();
+        try {
+            long seq = 0;
+            Map<String, Integer> index = new HashMap<>();
+            for (int i = 0; i < names.length; i++)
+                index.put(names[i], i);
+            for (int i = 0; i < names.length; i++) {
+                if (to[i] != UndoHistory.ABSENT || renames.containsValue(names[i]))
+                    continue;
+                int id = store.find(names[i]);
+                if (id != -1 && store.reserved(id) > (from[i] == UndoHistory.ABSENT ? 0 : from[i].reserved)) {
+                    failed++;
+                } else if (id != -1) {
+                    store.delete(id);
+                    if (journal != null)
+                        seq = journal.logDelete(names[i]);
+                }
+            }
+            for (int i = 0; i < names.length; i++) {
+                UndoHistory.Item target = to[i];
+                if (target == UndoHistory.ABSENT)
+                    continue;
+                try {
+                    int id = store.find(names[i]);
+                    String renamed = renames.get(names[i]);
+                    int source = renamed == null ? -1 : store.find(renamed);
+                    if (id == -1 && source != -1) {
+                        Integer k = index.get(renamed);
+                        seq = Math.max(seq, restore(source, names[i], k == null ? UndoHistory.ABSENT : from[k], target));
+                    } else if (id == -1) {
+                        id = store.add(names[i], target.quantity, target.price);
+                        if (journal != null)
+                            seq = journal.logAdd(names[i], target.quantity, target.price);
+                        if (target.reserved > 0)
+                            seq = setStock(id, target.quantity, target.reserved);
+                        if (target.threshold > 0) {
+                            store.setThreshold(id, target.threshold);
+                            if (journal != null)
+                                seq = journal.logThreshold(names[i], target.threshold);
+                        }
+                    } else {
+                        seq = Math.max(seq, restore(id, names[i], from[i], target));
+                    }
+                } catch (IllegalArgumentException e) {
+                    failed++;
+                }
+                if ((i + 1) % SYNC_EVERY == 0)
+                    sync(seq);
+            }
+            sync(seq);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        return failed;
+    }
+
+    // One existing item: name, plus whichever fields differ between from and to
+    private long restore(int id, String name, UndoHistory.Item from, UndoHistory.Item to) {
+        long seq = 0;
+        int quantity = from == UndoHistory.ABSENT || from.quantity != to.quantity ? to.quantity : store.quantity(id);
+        double price = from == UndoHistory.ABSENT || Double.compare(from.price, to.price) != 0 ? to.price
+                : store.price(id);
+        if (!name.equals(store.name(id)) || quantity != store.quantity(id)
+                || Double.compare(price, store.price(id)) != 0) {
+            String oldName = store.name(id);
+            store.update(id, name, quantity, price);
+            if (journal != null)
+                seq = journal.logUpdate(oldName, name, quantity, price);
+        }
+        if ((from == UndoHistory.ABSENT || from.threshold != to.threshold) && store.threshold(id) != to.threshold) {
+            store.setThreshold(id, to.threshold);
+            if (journal != null)
+                seq = journal.logThreshold(name, to.threshold);
+        }
+        return seq;
+    }
+
+    // Starts a snapshot of the current items; see InventoryJournal.beginCompaction
+    public InventoryJournal.Compaction beginSnapshot() throws IOException {
+        if (journal == null)
+            throw new IllegalStateException("No journal");
+        structure.writeLock().lock();
+        try {
+            return journal.beginCompaction(store);
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    public enum Movement {
+        ADJUST, RECEIVE, RESERVE, RELEASE, FULFIL
+    }
+
+    // Receives (delta > 0) or removes (delta < 0) stock. Returns false, changing
+    // nothing, if removing would take the item below its reserved units.
+    public boolean adjust(String sku, int delta) {
+        return move(Movement.ADJUST, sku, delta, 0);
+    }
+
+    // Receives units bought at unitCost, adding a cost layer. adjust() with a
+    // positive delta is a receipt at the item's current price.
+    public void receive(String sku, int units, double unitCost) {
+        move(Movement.RECEIVE, sku, units, unitCost);
+    }
+
+    // Holds units for an order. Returns false if fewer than units are available.
+    public boolean reserve(String sku, int units) {
+        return move(Movement.RESERVE, sku, units, 0);
+    }
+
+    // Returns reserved units to available stock. Returns false if fewer than
+    // units are reserved.
+    public boolean release(String sku, int units) {
+        return move(Movement.RELEASE, sku, units, 0);
+    }
+
+    // Ships reserved units, removing them from stock. Returns false if fewer
+    // than units are reserved.
+    public boolean fulfil(String sku, int units) {
+        return move(Movement.FULFIL, sku, units, 0);
+    }
+
+    // One movement; unitCost is only used by RECEIVE. Returns false if refused.
+    public boolean move(Movement kind, String sku, int amount, double unitCost) {
+        checkMovement(kind, amount, unitCost);
+        long seq;
+        structure.readLock().lock();
+        try {
+            seq = apply(kind, idOf(sku), sku, amount, unitCost);
+        } finally {
+            structure.readLock().unlock();
+        }
+        if (seq < 0)
+            return false;
+        sync(seq);
+        return true;
+    }
+
+    // Applies a batch of movements in order and syncs the journal once at the
+    // end. Each result is false if that movement was refused or its SKU does
+    // not exist; the others still apply. unitCosts may be null if the batch
+    // has no receipts.
+    public boolean[] moveAll(Movement[] kinds, String[] skus, int[] amounts, double[] unitCosts) {
+        for (int i = 0; i < kinds.length; i++)
+            checkMovement(kinds[i], amounts[i], unitCosts == null ? 0 : unitCosts[i]);
+        boolean[] results = new boolean[kinds.length];
+        long last = 0;
+        structure.readLock().lock();
+        try {
+            for (int i = 0; i < kinds.length; i++) {
+                int id = store.find(skus[i]);
+                if (id == -1)
+                    continue;
+                long seq = apply(kinds[i], id, skus[i], amounts[i], unitCosts == null ? 0 : unitCosts[i]);
+                results[i] = seq >= 0;
+                last = Math.max(last, seq);
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+        sync(last);
+        return results;
+    }
+
+    // Applies one movement under the item's stripe. Returns its journal
+    // sequence number (0 without a journal), or -1 if it was refused.
+    private long apply(Movement kind, int id, String sku, int amount, double unitCost) {
+        synchronized (stripe(id)) {
+            int quantity = store.quantity(id), reserved = store.reserved(id);
+            switch (kind) {
+                case ADJUST:
+                    long adjusted = (long) quantity + amount;
+                    if (adjusted < reserved)
+                        return -1;
+                    return setStock(id, Math.toIntExact(adjusted), reserved);
+                case RECEIVE:
+                    store.receive(id, amount, unitCost);
+                    return journal == null ? 0 : journal.logReceive(sku, amount, unitCost);
+                case RESERVE:
+                    if (quantity - reserved < amount)
+                        return -1;
+                    return setStock(id, quantity, reserved + amount);
+                case RELEASE:
+                    if (reserved < amount)
+                        return -1;
+                    return setStock(id, quantity, reserved - amount);
+                default: // FULFIL
+                    if (reserved < amount)
+                        return -1;
+                    return setStock(id, quantity - amount, reserved - amount);
+            }
+        }
+    }
+
+    // Sets the quantity at or below which the item is reported as low; 0 turns it off
+    public void setThreshold(String sku, int threshold) {
+        long seq = 0;
+        structure.readLock().lock();
+        try {
+            int id = idOf(sku);
+            synchronized (stripe(id)) {
+                store.setThreshold(id, threshold);
+                if (journal != null)
+                    seq = journal.logThreshold(sku, threshold);
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+        sync(seq);
+    }
+
+    // Runs reader with items kept from being added, renamed or deleted
+    public <T> T read(Supplier<T> reader) {
+        structure.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    // Units on hand that are not reserved
+    public int available(String sku) {
+        structure.readLock().lock();
+        try {
+            int id = idOf(sku);
+            synchronized (stripe(id)) {
+                return store.quantity(id) - store.reserved(id);
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    // Writes new stock levels and logs them; caller holds the item's stripe
+    private long setStock(int id, int quantity, int reserved) {
+        store.setStock(id, quantity, reserved);
+        return journal == null ? 0 : journal.logStock(store.name(id), quantity, reserved);
+    }
+
+    private void sync(long seq) {
+        if (seq == 0)
+            return;
+        try {
+            journal.sync(seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int idOf(String sku) {
+        int id = store.find(sku);
+        if (id == -1)
+            throw new IllegalArgumentException("No item '" + sku + "'");
+        return id;
+    }
+
+    // Lock guarding one item's stock; InventoryValuation reads items under it
+    Object stripe(int id) {
+        return stripes[id & (STRIPES - 1)];
+    }
+
+    static void checkMovement(Movement kind, int amount, double unitCost) {
+        if (kind != Movement.ADJUST && amount <= 0)
+            throw new IllegalArgumentException("Units must be positive: " + amount);
+        if (kind == Movement.RECEIVE && !(unitCost >= 0))
+            throw new IllegalArgumentException("Unit cost must not be negative");
+    }
+}
@@ -0,0 +1,255 @@
+package inventory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.DoubleAdder;
+
+// Item records kept in primitive columns indexed by a stable item id, with a
+// name -> id index and a running total value. Ids of deleted items are reused.
+// The store itself is single-threaded; InventoryService adds the locking needed
+// to move stock from several threads.
+public class InventoryStore {
+    // Longest name in UTF-8 bytes; the journal stores lengths as u16
+    static final int MAX_NAME_BYTES = 0xFFFF;
+
+    private String[] names = new String[16];
+    private int[] quantities = new int[16];
+    private int[] reserved = new int[16];
+    private int[] thresholds = new int[16];
+    private double[] prices = new double[16];
+    private boolean[] live = new boolean[16];
+    private int capacity = 0; // ids handed out so far
+    private int size = 0;
+    private int[] freeIds = new int[16];
+    private int freeCount = 0;
+
+    private final Map<String, Integer> index = new HashMap<>();
+    private final NameIndex nameIndex = new NameIndex();
+    private final LowStockIndex lowStock = new LowStockIndex();
+    private final CostLayers costLayers = new CostLayers();
+    private final DoubleAdder totalValue = new DoubleAdder();
+
+    public int size() {
+        return size;
+    }
+
+    // Upper bound (exclusive) on ids currently in use
+    public int idLimit() {
+        return capacity;
+    }
+
+    public boolean exists(int id) {
+        return id >= 0 && id < capacity && live[id];
+    }
+
+    // Ids of items whose name contains query, ignoring case, ascending
+    public int[] search(String query) {
+        return nameIndex.search(query);
+    }
+
+    public int find(String name) {
+        Integer id = index.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int quantity(int id) {
+        return quantities[id];
+    }
+
+    // Units held for pending orders; always between 0 and quantity(id)
+    public int reserved(int id) {
+        return reserved[id];
+    }
+
+    // Reorder point; 0 means the item is never reported as low
+    public int threshold(int id) {
+        return thresholds[id];
+    }
+
+    // Ids of items at or below their reorder threshold, lowest quantity - threshold first
+    public int[] lowStock() {
+        return lowStock.atMost(0);
+    }
+
+    // What the units on hand cost, valued first-in first-out
+    public double fifoValue(int id) {
+        return costLayers.fifoValue(id);
+    }
+
+    // Weighted-average cost of one unit on hand
+    public double averageCost(int id) {
+        return costLayers.averageCost(id);
+    }
+
+    public CostLayers costLayers() {
+        return costLayers;
+    }
+
+    public double price(int id) {
+        return prices[id];
+    }
+
+    public double total(int id) {
+        return quantities[id] * prices[id];
+    }
+
+    public double totalValue() {
+        return totalValue.sum();
+    }
+
+    // Live item ids in ascending order
+    public int[] ids() {
+        int[] ids = new int[size];
+        for (int id = 0, n = 0; id < capacity; id++)
+            if (live[id])
+                ids[n++] = id;
+        return ids;
+    }
+
+    public int add(String name, int quantity, double price) {
+        if (quantity < 0)
+            throw new IllegalArgumentException("Quantity must not be negative");
+        checkName(name);
+        if (index.containsKey(name))
+            throw new IllegalArgumentException("Item '" + name + "' already exists");
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (capacity == names.length)
+                grow();
+            id = capacity++;
+        }
+        names[id] = name;
+        quantities[id] = quantity;
+        reserved[id] = 0;
+        thresholds[id] = 0;
+        prices[id] = price;
+        live[id] = true;
+        index.put(name, id);
+        nameIndex.add(id, name);
+        costLayers.reset(id, quantity, price);
+        totalValue.add(quantity * price);
+        size++;
+        return id;
+    }
+
+    // Rejects a name the journal could not record, before anything changes
+    static void checkName(String name) {
+        if (name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES)
+            throw new IllegalArgumentException("Item name too long");
+    }
+
+    public void update(int id, String name, int quantity, double price) {
+        checkLive(id);
+        if (quantity < reserved[id])
+            throw new IllegalArgumentException("Item '" + names[id] + "' has " + reserved[id] + " units reserved");
+        if (!names[id].equals(name)) {
+            checkName(name);
+            if (index.containsKey(name))
+                throw new IllegalArgumentException("Item '" + name + "' already exists");
+            index.remove(names[id]);
+            index.put(name, id);
+            nameIndex.remove(id);
+            nameIndex.add(id, name);
+            names[id] = name;
+        }
+        totalValue.add(quantity * price - quantities[id] * prices[id]);
+        cost(id, quantity, price);
+        quantities[id] = quantity;
+        prices[id] = price;
+        track(id);
+    }
+
+    public void setThreshold(int id, int threshold) {
+        checkLive(id);
+        if (threshold < 0)
+            throw new IllegalArgumentException("Threshold must not be negative");
+        thresholds[id] = threshold;
+        track(id);
+    }
+
+    // Raw stock write for InventoryService, which serialises writes per item
+    void setStock(int id, int quantity, int reserved) {
+        totalValue.add((quantity - quantities[id]) * prices[id]);
+        cost(id, quantity, prices[id]);
+        quantities[id] = quantity;
+        this.reserved[id] = reserved;
+        track(id);
+    }
+
+    // Receipt of units bought at unitCost, for InventoryService
+    void receive(int id, int units, double unitCost) {
+        int quantity = Math.addExact(quantities[id], units);
+        totalValue.add(units * prices[id]);
+        costLayers.receive(id, units, unitCost, quantities[id]);
+        quantities[id] = quantity;
+        track(id);
+    }
+
+    // Records a quantity change in the cost layers: a rise is a receipt at
+    // unitCost, a fall issues the oldest units
+    private void cost(int id, int quantity, double unitCost) {
+        int before = quantities[id];
+        if (quantity > before)
+            costLayers.receive(id, quantity - before, unitCost, before);
+        else if (quantity < before)
+            costLayers.issue(id, before - quantity);
+    }
+
+    private void track(int id) {
+        if (thresholds[id] > 0)
+            lowStock.set(id, (long) quantities[id] - thresholds[id]);
+        else
+            lowStock.remove(id);
+    }
+
+    public void delete(int id) {
+        checkLive(id);
+        index.remove(names[id]);
+        nameIndex.remove(id);
+        lowStock.remove(id);
+        costLayers.remove(id);
+        totalValue.add(-quantities[id] * prices[id]);
+        names[id] = null;
+        live[id] = false;
+        if (freeCount == freeIds.length)
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = id;
+        size--;
+        if (size == 0)
+            totalValue.reset(); // drop accumulated rounding error
+    }
+
+    public void clear() {
+        Arrays.fill(names, 0, capacity, null);
+        Arrays.fill(live, 0, capacity, false);
+        index.clear();
+        nameIndex.clear();
+        lowStock.clear();
+        costLayers.clear();
+        capacity = 0;
+        size = 0;
+        freeCount = 0;
+        totalValue.reset();
+    }
+
+    private void checkLive(int id) {
+        if (!exists(id))
+            throw new IllegalArgumentException("No item with id " + id);
+    }
+
+    private void grow() {
+        int grown = names.length * 2;
+        names = Arrays.copyOf(names, grown);
+        quantities = Arrays.copyOf(quantities, grown);
+        reserved = Arrays.copyOf(reserved, grown);
+        thresholds = Arrays.copyOf(thresholds, grown);
+        prices = Arrays.copyOf(prices, grown);
+        live = Arrays.copyOf(live, grown);
+    }
+}
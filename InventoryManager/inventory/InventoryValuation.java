@@ -0,0 +1,113 @@
+package inventory;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Stock valuation of every item, at FIFO cost and at weighted-average cost.
+// Both values are kept per item by CostLayers, so the report is one O(1) read
+// per item, split across a fork-join pool. Each item is read under its stripe
+// lock so its quantity and values agree even while stock keeps moving; the
+// service's read lock holds the set of items still for the duration.
+public class InventoryValuation {
+    static final int LEAF = 1 << 14;
+
+    private final String[] names;
+    private final int[] quantities;
+    private final double[] averageCosts, fifoValues, averageValues;
+    private double totalFifo, totalAverage;
+
+    private InventoryValuation(int size) {
+        names = new String[size];
+        quantities = new int[size];
+        averageCosts = new double[size];
+        fifoValues = new double[size];
+        averageValues = new double[size];
+    }
+
+    public static InventoryValuation run(InventoryService service, ForkJoinPool pool) {
+        return service.read(() -> {
+            int[] ids = service.store().ids();
+            InventoryValuation report = new InventoryValuation(ids.length);
+            double[] totals = pool.invoke(new Part(service, ids, report, 0, ids.length));
+            report.totalFifo = totals[0];
+            report.totalAverage = totals[1];
+            return report;
+        });
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int row) {
+        return names[row];
+    }
+
+    public int quantity(int row) {
+        return quantities[row];
+    }
+
+    public double averageCost(int row) {
+        return averageCosts[row];
+    }
+
+    public double fifoValue(int row) {
+        return fifoValues[row];
+    }
+
+    public double averageValue(int row) {
+        return averageValues[row];
+    }
+
+    public double totalFifo() {
+        return totalFifo;
+    }
+
+    public double totalAverage() {
+        return totalAverage;
+    }
+
+    // Fills rows [from, to) and returns their FIFO and average-cost totals
+    private static class Part extends RecursiveTask<double[]> {
+        private final InventoryService service;
+        private final int[] ids;
+        private final InventoryValuation report;
+        private final int from, to;
+
+        Part(InventoryService service, int[] ids, InventoryValuation report, int from, int to) {
+            this.service = service;
+            this.ids = ids;
+            this.report = report;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected double[] compute() {
+            if (to - from > LEAF) {
+                int mid = (from + to) >>> 1;
+                Part left = new Part(service, ids, report, from, mid);
+                left.fork();
+                double[] right = new Part(service, ids, report, mid, to).compute();
+                double[] l = left.join();
+                return new double[] { l[0] + right[0], l[1] + right[1] };
+            }
+            InventoryStore store = service.store();
+            double fifo = 0, average = 0;
+            for (int row = from; row < to; row++) {
+                int id = ids[row];
+                synchronized (service.stripe(id)) {
+                    int quantity = store.quantity(id);
+                    double cost = store.averageCost(id);
+                    report.names[row] = store.name(id);
+                    report.quantities[row] = quantity;
+                    report.averageCosts[row] = cost;
+                    report.fifoValues[row] = store.fifoValue(id);
+                    report.averageValues[row] = Math.max(0, quantity) * cost;
+                }
+                fifo += report.fifoValues[row];
+                average += report.averageValues[row];
+            }
+            return new double[] { fifo, average };
+        }
+    }
+}
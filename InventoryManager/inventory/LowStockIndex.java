@@ -0,0 +1,133 @@
+package inventory;
+
+import java.util.Arrays;
+
+// Items that have a reorder threshold, in an indexed min-heap keyed by
+// quantity - threshold. Each stock change is one O(log n) sift, and the items
+// at or below a key are read off the top of the heap without visiting the rest.
+// Synchronized because stock changes arrive from several threads.
+public class LowStockIndex {
+    private int[] heap = new int[16]; // item ids
+    private int size = 0;
+    private int[] slot = new int[16]; // id -> heap position + 1, 0 if absent
+    private long[] keys = new long[16]; // by id
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void set(int id, long key) {
+        if (id >= slot.length) {
+            int grown = Math.max(id + 1, slot.length * 2);
+            slot = Arrays.copyOf(slot, grown);
+            keys = Arrays.copyOf(keys, grown);
+        }
+        int pos = slot[id] - 1;
+        if (pos < 0) {
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, size * 2);
+            pos = size++;
+            heap[pos] = id;
+            slot[id] = pos + 1;
+            keys[id] = key;
+            siftUp(pos);
+            return;
+        }
+        long old = keys[id];
+        keys[id] = key;
+        if (key < old)
+            siftUp(pos);
+        else if (key > old)
+            siftDown(pos);
+    }
+
+    public synchronized void remove(int id) {
+        if (id >= slot.length || slot[id] == 0)
+            return;
+        int pos = slot[id] - 1;
+        slot[id] = 0;
+        int last = heap[--size];
+        if (pos == size)
+            return;
+        heap[pos] = last;
+        slot[last] = pos + 1;
+        siftDown(pos);
+        siftUp(slot[last] - 1);
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++)
+            slot[heap[i]] = 0;
+        size = 0;
+    }
+
+    // Ids whose key is at most limit, lowest key first
+    public synchronized int[] atMost(long limit) {
+        int[] found = new int[16];
+        int count = 0;
+        int[] stack = new int[32];
+        int top = 0;
+        if (size > 0)
+            stack[top++] = 0;
+        while (top > 0) {
+            int pos = stack[--top];
+            int id = heap[pos];
+            if (keys[id] > limit)
+                continue; // nothing below this node qualifies either
+            if (count == found.length)
+                found = Arrays.copyOf(found, count * 2);
+            found[count++] = id;
+            for (int child = 2 * pos + 1; child <= 2 * pos + 2 && child < size; child++) {
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = child;
+            }
+        }
+        // Sort by key, then id, packed into one long per item
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            long key = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, keys[found[i]]));
+            order[i] = ((key - Integer.MIN_VALUE) << 31) | found[i];
+        }
+        Arrays.sort(order);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++)
+            result[i] = (int) (order[i] & Integer.MAX_VALUE);
+        return result;
+    }
+
+    private void siftUp(int pos) {
+        int id = heap[pos];
+        long key = keys[id];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int p = heap[parent];
+            if (keys[p] <= key)
+                break;
+            heap[pos] = p;
+            slot[p] = pos + 1;
+            pos = parent;
+        }
+        heap[pos] = id;
+        slot[id] = pos + 1;
+    }
+
+    private void siftDown(int pos) {
+        int id = heap[pos];
+        long key = keys[id];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+                child++;
+            int c = heap[child];
+            if (key <= keys[c])
+                break;
+            heap[pos] = c;
+            slot[c] = pos + 1;
+            pos = child;
+        }
+        heap[pos] = id;
+        slot[id] = pos + 1;
+    }
+}
@@ -0,0 +1,117 @@
+package inventory;
+
+import java.util.*;
+
+// Case-insensitive substring search over item names using a trigram index.
+// Each trigram maps to a sorted list of item ids; a query intersects the lists
+// of its trigrams (shortest first) and then verifies the few candidates left.
+// Queries shorter than three characters fall back to a scan of the names.
+public class NameIndex {
+    private final Map<Long, Postings> grams = new HashMap<>();
+    private String[] lowerNames = new String[16];
+
+    public void add(int id, String name) {
+        if (id >= lowerNames.length)
+            lowerNames = Arrays.copyOf(lowerNames, Math.max(id + 1, lowerNames.length * 2));
+        String lower = name.toLowerCase(Locale.ROOT);
+        lowerNames[id] = lower;
+        for (int i = 0; i + 3 <= lower.length(); i++)
+            grams.computeIfAbsent(gram(lower, i), k -> new Postings()).add(id);
+    }
+
+    public void remove(int id) {
+        String lower = lowerNames[id];
+        if (lower == null)
+            return;
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            Long key = gram(lower, i);
+            Postings p = grams.get(key);
+            if (p != null && p.remove(id) && p.size == 0)
+                grams.remove(key);
+        }
+        lowerNames[id] = null;
+    }
+
+    public void clear() {
+        grams.clear();
+        lowerNames = new String[16];
+    }
+
+    // Ids of items whose name contains query (ignoring case), ascending
+    public int[] search(String query) {
+        String q = query.toLowerCase(Locale.ROOT);
+        if (q.length() < 3)
+            return scan(q);
+
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            Postings p = grams.get(gram(q, i));
+            if (p == null)
+                return new int[0];
+            lists.add(p);
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+
+        Postings smallest = lists.get(0);
+        int[] result = new int[smallest.size];
+        int count = 0;
+        candidates: for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+            for (int l = 1; l < lists.size(); l++) {
+                if (!lists.get(l).contains(id))
+                    continue candidates;
+            }
+            if (lowerNames[id].contains(q))
+                result[count++] = id;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private int[] scan(String q) {
+        int[] result = new int[16];
+        int count = 0;
+        for (int id = 0; id < lowerNames.length; id++) {
+            if (lowerNames[id] != null && lowerNames[id].contains(q)) {
+                if (count == result.length)
+                    result = Arrays.copyOf(result, count * 2);
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static long gram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    // Sorted, duplicate-free id list
+    private static class Postings {
+        int[] ids = new int[4];
+        int size = 0;
+
+        void add(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0)
+                return;
+            pos = -pos - 1;
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0)
+                return false;
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package inventory;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+// Immutable hash map (a hash array mapped trie). put and remove copy only the
+// nodes on the path to the changed entry, O(log32 n) of them, and share every
+// other node with the map they were made from, so holding many versions of a
+// large map costs little more than one. diff() skips subtrees two versions
+// share, so comparing a version with one derived from it takes time in
+// proportion to what changed. A Builder applies many changes without copying
+// the nodes it has already copied.
+public final class PersistentMap<K, V> {
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+    private static final Object NOT_FOUND = new Object();
+
+    public interface Changes<K, V> {
+        // before or after is null if the key is absent on that side
+        void changed(K key, V before, V after);
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(K key) {
+        return root != null && root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Object value = root == null ? NOT_FOUND : root.find(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    // Returns this map if key already maps to an equal value
+    public PersistentMap<K, V> put(K key, V value) {
+        Box box = new Box();
+        Node node = (root == null ? BitmapNode.EMPTY : root).put(null, 0, hash(key), key, value, box);
+        return node == root ? this : new PersistentMap<>(node, box.added ? size + 1 : size);
+    }
+
+    public PersistentMap<K, V> remove(K key) {
+        if (root == null)
+            return this;
+        Box box = new Box();
+        Node node = root.remove(null, 0, hash(key), key, box);
+        return box.removed ? new PersistentMap<>(node, size - 1) : this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null)
+            root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    // Reports every key whose value differs between this map and other
+    @SuppressWarnings("unchecked")
+    public void diff(PersistentMap<K, V> other, Changes<? super K, ? super V> changes) {
+        diff(root, other.root, 0, (Changes<Object, Object>) changes);
+    }
+
+    public Builder<K, V> builder() {
+        return new Builder<>(root, size);
+    }
+
+    // Edits nodes it created in place; the map it started from is untouched
+    public static final class Builder<K, V> {
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        private Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        public Builder<K, V> put(K key, V value) {
+            check();
+            Box box = new Box();
+            root = (root == null ? BitmapNode.EMPTY : root).put(edit, 0, hash(key), key, value, box);
+            if (box.added)
+                size++;
+            return this;
+        }
+
+        public Builder<K, V> remove(K key) {
+            check();
+            if (root == null)
+                return this;
+            Box box = new Box();
+            root = root.remove(edit, 0, hash(key), key, box);
+            if (box.removed)
+                size--;
+            return this;
+        }
+
+        // The builder cannot be used afterwards
+        public PersistentMap<K, V> build() {
+            check();
+            edit = null;
+            return new PersistentMap<>(root, size);
+        }
+
+        private void check() {
+            if (edit == null)
+                throw new IllegalStateException("Builder already built");
+        }
+    }
+
+    private static final class Box {
+        boolean added, removed;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private abstract static class Node {
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node put(Object edit, int shift, int hash, Object key, Object value, Box box);
+
+        // null once empty
+        abstract Node remove(Object edit, int shift, int hash, Object key, Box box);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    // Up to 32 slots, present ones flagged in bitmap. array holds a key and
+    // value per slot, or null and a child node.
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+        final Object edit;
+        int bitmap;
+        Object[] array;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((bitmap & bit) == 0)
+                return NOT_FOUND;
+            int i = index(bit);
+            Object k = array[2 * i], v = array[2 * i + 1];
+            if (k == null)
+                return ((Node) v).find(shift + 5, hash, key);
+            return key.equals(k) ? v : NOT_FOUND;
+        }
+
+        Node put(Object edit, int shift, int hash, Object key, Object value, Box box) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            int i = index(bit);
+            if ((bitmap & bit) != 0) {
+                Object k = array[2 * i], v = array[2 * i + 1];
+                if (k == null) {
+                    Node child = (Node) v;
+                    Node n = child.put(edit, shift + 5, hash, key, value, box);
+                    return n == child ? this : set(edit, 2 * i + 1, n);
+                }
+                if (key.equals(k))
+                    return Objects.equals(v, value) ? this : set(edit, 2 * i + 1, value);
+                box.added = true;
+                Node pair = pair(edit, shift + 5, k, v, hash, key, value);
+                BitmapNode copy = editable(edit);
+                copy.array[2 * i] = null;
+                copy.array[2 * i + 1] = pair;
+                return copy;
+            }
+            box.added = true;
+            int n = Integer.bitCount(bitmap);
+            Object[] grown = new Object[2 * (n + 1)];
+            System.arraycopy(array, 0, grown, 0, 2 * i);
+            grown[2 * i] = key;
+            grown[2 * i + 1] = value;
+            System.arraycopy(array, 2 * i, grown, 2 * (i + 1), 2 * (n - i));
+            if (edit != null && this.edit == edit) {
+                bitmap |= bit;
+                array = grown;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap | bit, grown);
+        }
+
+        Node remove(Object edit, int shift, int hash, Object key, Box box) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((bitmap & bit) == 0)
+                return this;
+            int i = index(bit);
+            Object k = array[2 * i], v = array[2 * i + 1];
+            if (k == null) {
+                Node child = (Node) v;
+                Node n = child.remove(edit, shift + 5, hash, key, box);
+                if (n == child)
+                    return this;
+                if (n != null)
+                    return set(edit, 2 * i + 1, n);
+            } else if (!key.equals(k)) {
+                return this;
+            } else {
+                box.removed = true;
+            }
+            if (bitmap == bit)
+                return null;
+            int n = Integer.bitCount(bitmap);
+            Object[] shrunk = new Object[2 * (n - 1)];
+            System.arraycopy(array, 0, shrunk, 0, 2 * i);
+            System.arraycopy(array, 2 * (i + 1), shrunk, 2 * i, 2 * (n - i - 1));
+            if (edit != null && this.edit == edit) {
+                bitmap ^= bit;
+                array = shrunk;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap ^ bit, shrunk);
+        }
+
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null)
+                    ((Node) array[i + 1]).forEach(action);
+                else
+                    action.accept(array[i], array[i + 1]);
+            }
+        }
+
+        private BitmapNode set(Object edit, int index, Object value) {
+            BitmapNode copy = editable(edit);
+            copy.array[index] = value;
+            return copy;
+        }
+
+        private BitmapNode editable(Object edit) {
+            if (edit != null && this.edit == edit)
+                return this;
+            return new BitmapNode(edit, bitmap, array.clone());
+        }
+    }
+
+    // Keys whose hashes are all equal
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2)
+                if (key.equals(array[i]))
+                    return i;
+            return -1;
+        }
+
+        Object find(int shift, int hash, Object key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            return i < 0 ? NOT_FOUND : array[i + 1];
+        }
+
+        Node put(Object edit, int shift, int hash, Object key, Object value, Box box) {
+            if (hash != this.hash) {
+                // Push this node one level down next to the new key
+                BitmapNode parent = new BitmapNode(edit, 1 << ((this.hash >>> shift) & 31), new Object[] { null, this });
+                return parent.put(edit, shift, hash, key, value, box);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (Objects.equals(array[i + 1], value))
+                    return this;
+                Object[] copy = array.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            box.added = true;
+            Object[] grown = Arrays.copyOf(array, array.length + 2);
+            grown[array.length] = key;
+            grown[array.length + 1] = value;
+            return new CollisionNode(hash, grown);
+        }
+
+        Node remove(Object edit, int shift, int hash, Object key, Box box) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i < 0)
+                return this;
+            box.removed = true;
+            if (array.length == 2)
+                return null;
+            Object[] shrunk = new Object[array.length - 2];
+            System.arraycopy(array, 0, shrunk, 0, i);
+            System.arraycopy(array, i + 2, shrunk, i, array.length - i - 2);
+            return new CollisionNode(hash, shrunk);
+        }
+
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2)
+                action.accept(array[i], array[i + 1]);
+        }
+    }
+
+    private static Node pair(Object edit, int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+        int h1 = hash(k1);
+        if (h1 == h2)
+            return new CollisionNode(h1, new Object[] { k1, v1, k2, v2 });
+        Box box = new Box();
+        return BitmapNode.EMPTY.put(edit, shift, h1, k1, v1, box).put(edit, shift, h2, k2, v2, box);
+    }
+
+    private static void diff(Node a, Node b, int shift, Changes<Object, Object> changes) {
+        if (a == b)
+            return;
+        if (!(a instanceof BitmapNode) || !(b instanceof BitmapNode)) {
+            diffEntries(a, b, changes);
+            return;
+        }
+        BitmapNode x = (BitmapNode) a, y = (BitmapNode) b;
+        int union = x.bitmap | y.bitmap;
+        while (union != 0) {
+            int bit = union & -union;
+            union ^= bit;
+            Object kx = null, vx = null, ky = null, vy = null;
+            boolean inX = (x.bitmap & bit) != 0, inY = (y.bitmap & bit) != 0;
+            if (inX) {
+                int i = x.index(bit);
+                kx = x.array[2 * i];
+                vx = x.array[2 * i + 1];
+            }
+            if (inY) {
+                int i = y.index(bit);
+                ky = y.array[2 * i];
+                vy = y.array[2 * i + 1];
+            }
+            if (inX && inY && kx == null && ky == null) {
+                diff((Node) vx, (Node) vy, shift + 5, changes);
+            } else if (inX && inY && kx != null && kx.equals(ky)) {
+                if (!Objects.equals(vx, vy))
+                    changes.changed(kx, vx, vy);
+            } else {
+                // Shapes differ here: compare the slots entry by entry
+                diffEntries(slot(kx, vx, inX), slot(ky, vy, inY), changes);
+            }
+        }
+    }
+
+    private static Node slot(Object key, Object value, boolean present) {
+        if (!present)
+            return null;
+        if (key == null)
+            return (Node) value;
+        return new CollisionNode(hash(key), new Object[] { key, value });
+    }
+
+    private static void diffEntries(Node a, Node b, Changes<Object, Object> changes) {
+        Map<Object, Object> left = new HashMap<>();
+        if (a != null)
+            a.forEach(left::put);
+        if (b != null) {
+            b.forEach((key, value) -> {
+                boolean had = left.containsKey(key);
+                Object before = left.remove(key);
+                if (!had || !Objects.equals(before, value))
+                    changes.changed(key, before, value);
+            });
+        }
+        left.forEach((key, value) -> changes.changed(key, value, null));
+    }
+}
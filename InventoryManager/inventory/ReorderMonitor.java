@@ -0,0 +1,71 @@
+package inventory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// Turns the store's low-stock index into reorder suggestions on a scheduled
+// background thread. A scan only touches the items at or below their
+// threshold, so its cost does not grow with the size of the catalogue.
+public class ReorderMonitor {
+    // Reorder up to this multiple of the threshold
+    static final int TARGET_MULTIPLE = 2;
+
+    public static class Suggestion {
+        public final String name;
+        public final int quantity, threshold, order;
+
+        Suggestion(String name, int quantity, int threshold, int order) {
+            this.name = name;
+            this.quantity = quantity;
+            this.threshold = threshold;
+            this.order = order;
+        }
+    }
+
+    private final InventoryService service;
+    private ScheduledExecutorService scheduler;
+
+    public ReorderMonitor(InventoryService service) {
+        this.service = service;
+    }
+
+    // Most urgent first
+    public List<Suggestion> scan() {
+        return service.read(() -> {
+            InventoryStore store = service.store();
+            int[] ids = store.lowStock();
+            List<Suggestion> suggestions = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                int quantity = store.quantity(id), threshold = store.threshold(id);
+                long order = (long) threshold * TARGET_MULTIPLE - quantity;
+                suggestions.add(new Suggestion(store.name(id), quantity, threshold,
+                        (int) Math.min(Integer.MAX_VALUE, Math.max(1, order))));
+            }
+            return suggestions;
+        });
+    }
+
+    // Calls listener with a fresh scan every periodMillis, on the monitor's thread
+    public synchronized void start(long periodMillis, Consumer<List<Suggestion>> listener) {
+        stop();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reorder-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                listener.accept(scan());
+            } catch (RuntimeException e) {
+                // Keep the schedule alive; the next scan retries
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+    }
+}
@@ -0,0 +1,293 @@
+package inventory;
+
+import java.util.*;
+
+// Undo/redo for catalogue edits. The history keeps a persistent map from item
+// name to the item's state (or ABSENT), and each step is the pair of map
+// versions from before and after its edit. Versions share every node but the
+// paths to the items an edit touched, so a step costs O(k log n) memory for k
+// touched items instead of a copy of the catalogue. Undo and redo diff the two
+// versions and put only the fields that edit changed back through the
+// service, so they are journaled like any other change and leave stock moved
+// since by other terminals alone.
+//
+// An edit names the items it may touch, and their states are captured from
+// the store just before and after it runs. Edits between beginGroup() and the
+// matching endGroup() become one step. A rename shows up as one name going
+// away and another appearing, so it must be reported with renamed() for undo
+// to rename the item back instead of re-creating it.
+public class UndoHistory {
+    public static final class Item {
+        public final int quantity, reserved, threshold;
+        public final double price;
+
+        Item(int quantity, int reserved, int threshold, double price) {
+            this.quantity = quantity;
+            this.reserved = reserved;
+            this.threshold = threshold;
+            this.price = price;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Item))
+                return false;
+            Item other = (Item) o;
+            return quantity == other.quantity && reserved == other.reserved && threshold == other.threshold
+                    && Double.compare(price, other.price) == 0;
+        }
+
+        public int hashCode() {
+            return Objects.hash(quantity, reserved, threshold, price);
+        }
+    }
+
+    // State of an item that does not exist
+    static final Item ABSENT = new Item(-1, -1, -1, Double.NaN);
+
+    private static final class Step {
+        final String label;
+        final PersistentMap<String, Item> before, after;
+        // New name to old name, and back
+        final Map<String, String> renamedFrom, renamedTo;
+
+        Step(String label, PersistentMap<String, Item> before, PersistentMap<String, Item> after,
+                Map<String, String> renamedTo) {
+            this.label = label;
+            this.before = before;
+            this.after = after;
+            this.renamedTo = renamedTo;
+            renamedFrom = new HashMap<>();
+            renamedTo.forEach((oldName, newName) -> renamedFrom.put(newName, oldName));
+        }
+    }
+
+    private final InventoryService service;
+    private final int maxDepth;
+    private final ArrayDeque<Step> undo = new ArrayDeque<>();
+    private final ArrayDeque<Step> redo = new ArrayDeque<>();
+    private PersistentMap<String, Item> current = PersistentMap.empty();
+
+    // The open group, if depth > 0
+    private int depth = 0;
+    private String groupLabel;
+    private PersistentMap<String, Item> groupBefore;
+    private Set<String> touched;
+    private Map<String, String> renames;
+
+    public UndoHistory(InventoryService service, int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("History depth must be at least 1");
+        this.service = service;
+        this.maxDepth = maxDepth;
+    }
+
+    // Runs action as one step; names must cover every item it may add,
+    // change, rename or delete
+    public synchronized void edit(String label, Collection<String> names, Runnable action) {
+        beginGroup(label);
+        try {
+            touch(names);
+            action.run();
+        } finally {
+            endGroup();
+        }
+    }
+
+    // Runs action as one step when it may touch any item, such as a clear
+    public synchronized void editAll(String label, Runnable action) {
+        beginGroup(label);
+        try {
+            touch(allNames());
+            action.run();
+            added(allNames());
+        } finally {
+            endGroup();
+        }
+    }
+
+    // Edits until the matching endGroup() become one step; groups nest, and
+    // the outermost label is the one shown
+    public synchronized void beginGroup(String label) {
+        if (depth++ == 0) {
+            groupLabel = label;
+            groupBefore = current;
+            touched = new HashSet<>();
+            renames = new HashMap<>();
+        }
+    }
+
+    // Records the current state of items an open group is about to change
+    public synchronized void touch(Collection<String> names) {
+        if (depth == 0)
+            throw new IllegalStateException("No open group");
+        List<String> fresh = new ArrayList<>();
+        for (String name : names)
+            if (touched.add(name))
+                fresh.add(name);
+        Item[] states = capture(fresh);
+        PersistentMap.Builder<String, Item> now = current.builder(), before = groupBefore.builder();
+        for (int i = 0; i < states.length; i++) {
+            now.put(fresh.get(i), states[i]);
+            before.put(fresh.get(i), states[i]);
+        }
+        current = now.build();
+        groupBefore = before.build();
+    }
+
+    // Tells the open group that the item called oldName is now newName. Both
+    // names must have been touched.
+    public synchronized void renamed(String oldName, String newName) {
+        if (depth == 0)
+            throw new IllegalStateException("No open group");
+        if (!touched.contains(oldName) || !touched.contains(newName))
+            throw new IllegalStateException("Rename of untouched item");
+        // A then B then C is one rename from A to C
+        String original = oldName;
+        for (Map.Entry<String, String> e : renames.entrySet()) {
+            if (e.getValue().equals(oldName)) {
+                original = e.getKey();
+                break;
+            }
+        }
+        renames.remove(original);
+        if (!original.equals(newName))
+            renames.put(original, newName);
+    }
+
+    // Items the open group created: they did not exist before it
+    private void added(Collection<String> names) {
+        PersistentMap.Builder<String, Item> now = current.builder(), before = groupBefore.builder();
+        for (String name : names) {
+            if (touched.add(name)) {
+                now.put(name, ABSENT);
+                before.put(name, ABSENT);
+            }
+        }
+        current = now.build();
+        groupBefore = before.build();
+    }
+
+    public synchronized void endGroup() {
+        if (depth == 0)
+            throw new IllegalStateException("No open group");
+        if (--depth > 0)
+            return;
+        List<String> names = new ArrayList<>(touched);
+        Item[] states = capture(names);
+        PersistentMap.Builder<String, Item> now = current.builder();
+        for (int i = 0; i < states.length; i++)
+            now.put(names.get(i), states[i]);
+        current = now.build();
+        boolean[] changed = { false };
+        groupBefore.diff(current, (name, before, after) -> changed[0] = true);
+        if (changed[0]) {
+            undo.addLast(new Step(groupLabel, groupBefore, current, renames));
+            if (undo.size() > maxDepth)
+                undo.removeFirst();
+            redo.clear();
+        }
+        groupBefore = null;
+        touched = null;
+        renames = null;
+    }
+
+    public synchronized boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public synchronized boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    // Label of the step undo() would revert, or null
+    public synchronized String undoLabel() {
+        return undo.isEmpty() ? null : undo.peekLast().label;
+    }
+
+    public synchronized String redoLabel() {
+        return redo.isEmpty() ? null : redo.peekLast().label;
+    }
+
+    // Reverts the latest step. Returns how many items could not be put back,
+    // for example because their stock is now reserved or their name taken.
+    public synchronized int undo() {
+        checkClosed();
+        Step step = undo.pollLast();
+        if (step == null)
+            return 0;
+        int failed = apply(step.after, step.before, step.renamedTo);
+        current = step.before;
+        redo.addLast(step);
+        return failed;
+    }
+
+    public synchronized int redo() {
+        checkClosed();
+        Step step = redo.pollLast();
+        if (step == null)
+            return 0;
+        int failed = apply(step.before, step.after, step.renamedFrom);
+        current = step.after;
+        undo.addLast(step);
+        return failed;
+    }
+
+    public synchronized void clear() {
+        checkClosed();
+        undo.clear();
+        redo.clear();
+        current = PersistentMap.empty();
+    }
+
+    // renames maps a name in to onto the name the item has in from
+    private int apply(PersistentMap<String, Item> from, PersistentMap<String, Item> to, Map<String, String> renames) {
+        List<String> names = new ArrayList<>();
+        List<Item> fromStates = new ArrayList<>(), toStates = new ArrayList<>();
+        from.diff(to, (name, before, after) -> {
+            names.add(name);
+            fromStates.add(before == null ? ABSENT : before);
+            toStates.add(after == null ? ABSENT : after);
+        });
+        return service.restore(names.toArray(new String[0]), fromStates.toArray(new Item[0]),
+                toStates.toArray(new Item[0]), renames);
+    }
+
+    private Item[] capture(List<String> names) {
+        return service.read(() -> {
+            InventoryStore store = service.store();
+            Item[] states = new Item[names.size()];
+            for (int i = 0; i < states.length; i++) {
+                int id = store.find(names.get(i));
+                if (id == -1) {
+                    states[i] = ABSENT;
+                    continue;
+                }
+                synchronized (service.stripe(id)) {
+                    states[i] = new Item(store.quantity(id), store.reserved(id), store.threshold(id), store.price(id));
+                }
+            }
+            return states;
+        });
+    }
+
+    // Items in the store plus those the history knows about
+    private Collection<String> allNames() {
+        Set<String> names = service.read(() -> {
+            InventoryStore store = service.store();
+            Set<String> all = new HashSet<>(store.size() * 2);
+            for (int id : store.ids())
+                all.add(store.name(id));
+            return all;
+        });
+        current.forEach((name, state) -> {
+            if (state != ABSENT)
+                names.add(name);
+        });
+        return names;
+    }
+
+    private void checkClosed() {
+        if (depth > 0)
+            throw new IllegalStateException("Group still open");
+    }
+}
@@ -1,80 +1,127 @@
 import javax.swing.*;
+import javax.swing.event.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.*;
+import java.security.GeneralSecurityException;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import javax.crypto.AEADBadTagException;
+import vault.Vault;
+import vault.VaultCrypto;
+import vault.VaultExport;
+import vault.VaultImport;
 
 public class PasswordManager extends JFrame {
-    private static final String MASTER_PASSWORD = "admin123"; // Change this if needed
-    private static final String DATA_FILE = "passwords.txt";
+    private static final Path VAULT_FILE = Paths.get("passwords.vault");
+    // Plain XOR-obfuscated file used before the vault; imported once
+    private static final String LEGACY_FILE = "passwords.txt";
+    // Most accounts listed for a search
+    private static final int SEARCH_LIMIT = 100;
 
-    private Map<String, String> passwordMap = new HashMap<>();
+    private Vault vault;
 
     // GUI components
     private JTextField accountField;
-    private JTextField passwordField;
+    private JPasswordField passwordField;
     private JTextField searchField;
     private JLabel searchResultLabel;
-    private JTextArea displayArea;
+    private JList<String> accountList;
+    private final AccountListModel accountModel = new AccountListModel();
+    private JButton importButton;
+    private JButton exportButton;
+    private JProgressBar progressBar;
 
     public PasswordManager() {
         showLoginScreen();
     }
 
     private void showLoginScreen() {
+        boolean exists = Vault.exists(VAULT_FILE);
         JPasswordField passwordField = new JPasswordField();
         int option = JOptionPane.showConfirmDialog(
                 this,
                 passwordField,
-                "Enter Master Password",
+                exists ? "Enter Master Password" : "Choose a Master Password",
                 JOptionPane.OK_CANCEL_OPTION,
                 JOptionPane.PLAIN_MESSAGE);
 
-        if (option == JOptionPane.OK_OPTION) {
-            String input = new String(passwordField.getPassword());
-            if (input.equals(MASTER_PASSWORD)) {
-                loadPasswords();
-                createMainUI();
+        if (option != JOptionPane.OK_OPTION)
+            System.exit(0);
+
+        char[] master = passwordField.getPassword();
+        try {
+            if (exists) {
+                vault = Vault.open(VAULT_FILE, master);
             } else {
-                JOptionPane.showMessageDialog(this, "Incorrect Master Password. Exiting.");
-                System.exit(0);
+                if (master.length == 0 || !confirmMaster(master)) {
+                    JOptionPane.showMessageDialog(this, "Master passwords do not match. Exiting.");
+                    System.exit(0);
+                }
+                vault = Vault.create(VAULT_FILE, master, VaultCrypto.Kdf.DEFAULT);
+                importLegacyPasswords();
             }
-        } else {
+        } catch (AEADBadTagException e) {
+            JOptionPane.showMessageDialog(this, "Incorrect Master Password. Exiting.");
             System.exit(0);
+        } catch (IOException | GeneralSecurityException e) {
+            JOptionPane.showMessageDialog(this, "Error opening vault: " + e.getMessage());
+            System.exit(0);
+        } finally {
+            Arrays.fill(master, '\0');
         }
+        createMainUI();
     }
 
-    private void loadPasswords() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(DATA_FILE))) {
+    private boolean confirmMaster(char[] master) {
+        JPasswordField confirmField = new JPasswordField();
+        int option = JOptionPane.showConfirmDialog(
+                this,
+                confirmField,
+                "Confirm Master Password",
+                JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE);
+        char[] confirm = confirmField.getPassword();
+        boolean same = option == JOptionPane.OK_OPTION && Arrays.equals(master, confirm);
+        Arrays.fill(confirm, '\0');
+        return same;
+    }
+
+    // Moves entries from the old obfuscated file into a new vault. The old
+    // file is left in place for the user to delete once they have checked.
+    private void importLegacyPasswords() throws IOException, GeneralSecurityException {
+        if (!new File(LEGACY_FILE).exists())
+            return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(LEGACY_FILE))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 String[] parts = line.split(":");
                 if (parts.length == 2) {
-                    String account = decrypt(parts[0]);
-                    String password = decrypt(parts[1]);
-                    passwordMap.put(account, password);
+                    char[] password = decodeLegacy(parts[1]);
+                    vault.put(new String(decodeLegacy(parts[0])), password);
+                    Arrays.fill(password, '\0');
                 }
             }
-        } catch (IOException e) {
-            // File might not exist yet
-        }
-    }
-
-    private void savePasswordsToFile() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(DATA_FILE))) {
-            for (Map.Entry<String, String> entry : passwordMap.entrySet()) {
-                String encAccount = encrypt(entry.getKey());
-                String encPassword = encrypt(entry.getValue());
-                writer.write(encAccount + ":" + encPassword);
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Failed to save file.");
         }
+        JOptionPane.showMessageDialog(this, "Imported " + vault.size() + " passwords from " + LEGACY_FILE
+                + ".\nDelete that file once you have checked them, it is not encrypted.");
     }
 
     private void createMainUI() {
         setTitle("Password Manager");
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                try {
+                    vault.close();
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(PasswordManager.this, "Error closing vault: " + ex.getMessage());
+                }
+            }
+        });
         setSize(450, 500);
         setLayout(new BorderLayout());
 
@@ -87,7 +134,7 @@ public class PasswordManager extends JFrame {
         inputPanel.add(accountField);
 
         inputPanel.add(new JLabel("Password:"));
-        passwordField = new JTextField();
+        passwordField = new JPasswordField();
         inputPanel.add(passwordField);
 
         JButton addButton = new JButton("Add / Update");
@@ -104,6 +151,20 @@ public class PasswordManager extends JFrame {
 
         JPanel searchTop = new JPanel(new BorderLayout(5, 5));
         searchField = new JTextField();
+        // Filters the list as the user types; Enter shows the best match
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                updateDisplay();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                updateDisplay();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        searchField.addActionListener(e -> searchPassword());
         JButton searchButton = new JButton("Search");
         searchButton.addActionListener(e -> searchPassword());
 
@@ -115,19 +176,54 @@ public class PasswordManager extends JFrame {
         searchResultLabel = new JLabel(" ");
         searchPanel.add(searchResultLabel, BorderLayout.CENTER);
 
-        // Display area
-        displayArea = new JTextArea();
-        displayArea.setEditable(false);
-        JScrollPane scrollPane = new JScrollPane(displayArea);
-        scrollPane.setBorder(BorderFactory.createTitledBorder("Stored Passwords"));
+        // Account list; passwords are only decrypted when shown
+        accountList = new JList<>(accountModel);
+        accountList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // A fixed cell size keeps layout from measuring every account
+        accountList.setPrototypeCellValue("Account name prototype");
+        accountList.addListSelectionListener(e -> {
+            String selected = accountList.getSelectedValue();
+            if (!e.getValueIsAdjusting() && selected != null) {
+                accountField.setText(selected);
+                searchResultLabel.setText(" ");
+            }
+        });
+        accountList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2)
+                    showPassword(accountList.getSelectedValue());
+            }
+        });
+        JButton showButton = new JButton("Show Password");
+        showButton.addActionListener(e -> showPassword(accountList.getSelectedValue()));
+
+        JPanel listPanel = new JPanel(new BorderLayout(5, 5));
+        listPanel.setBorder(BorderFactory.createTitledBorder("Stored Accounts"));
+        listPanel.add(new JScrollPane(accountList), BorderLayout.CENTER);
+        listPanel.add(showButton, BorderLayout.SOUTH);
 
         // Add to frame
         JPanel topPanel = new JPanel(new BorderLayout());
         topPanel.add(inputPanel, BorderLayout.NORTH);
         topPanel.add(searchPanel, BorderLayout.SOUTH);
 
+        // Bulk import and export
+        importButton = new JButton("Import...");
+        importButton.addActionListener(e -> importAccounts());
+        exportButton = new JButton("Export...");
+        exportButton.addActionListener(e -> exportAccounts());
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        JPanel transferPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        transferPanel.add(importButton);
+        transferPanel.add(exportButton);
+        transferPanel.add(progressBar);
+
         add(topPanel, BorderLayout.NORTH);
-        add(scrollPane, BorderLayout.CENTER);
+        add(listPanel, BorderLayout.CENTER);
+        add(transferPanel, BorderLayout.SOUTH);
 
         updateDisplay();
         setVisible(true);
@@ -135,15 +231,23 @@ public class PasswordManager extends JFrame {
 
     private void savePassword() {
         String account = accountField.getText().trim();
-        String password = passwordField.getText().trim();
+        char[] password = passwordField.getPassword();
 
-        if (account.isEmpty() || password.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please fill in both fields.");
+        try {
+            if (account.isEmpty() || password.length == 0) {
+                JOptionPane.showMessageDialog(this, "Please fill in both fields.");
+                return;
+            }
+            vault.put(account, password);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage());
+            return;
+        } catch (IOException | GeneralSecurityException e) {
+            JOptionPane.showMessageDialog(this, "Error saving: " + e.getMessage());
             return;
+        } finally {
+            Arrays.fill(password, '\0');
         }
-
-        passwordMap.put(account, password);
-        savePasswordsToFile();
         updateDisplay();
         accountField.setText("");
         passwordField.setText("");
@@ -156,15 +260,18 @@ public class PasswordManager extends JFrame {
             return;
         }
 
-        if (passwordMap.containsKey(account)) {
-            passwordMap.remove(account);
-            savePasswordsToFile();
-            updateDisplay();
-            accountField.setText("");
-            passwordField.setText("");
-        } else {
-            JOptionPane.showMessageDialog(this, "Account not found.");
+        try {
+            if (!vault.remove(account)) {
+                JOptionPane.showMessageDialog(this, "Account not found.");
+                return;
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            JOptionPane.showMessageDialog(this, "Error saving: " + e.getMessage());
+            return;
         }
+        updateDisplay();
+        accountField.setText("");
+        passwordField.setText("");
     }
 
     private void searchPassword() {
@@ -174,43 +281,243 @@ public class PasswordManager extends JFrame {
             return;
         }
 
-        if (passwordMap.containsKey(account)) {
-            searchResultLabel.setText("Password for '" + account + "': " + passwordMap.get(account));
-        } else {
+        if (vault.contains(account)) {
+            showPassword(account);
+            return;
+        }
+        List<String> best = vault.search(account, 1);
+        if (best.isEmpty()) {
             searchResultLabel.setText("Account not found.");
+        } else {
+            accountList.setSelectedValue(best.get(0), true);
+            showPassword(best.get(0));
         }
     }
 
-    private void updateDisplay() {
-        StringBuilder sb = new StringBuilder();
-        for (Map.Entry<String, String> entry : passwordMap.entrySet()) {
-            sb.append("Account: ").append(entry.getKey())
-                    .append(" | Password: ").append(entry.getValue()).append("\n");
+    private void showPassword(String account) {
+        if (account == null) {
+            searchResultLabel.setText("Select an account first.");
+            return;
+        }
+        try {
+            char[] password = vault.password(account);
+            if (password == null) {
+                searchResultLabel.setText("Account not found.");
+                return;
+            }
+            searchResultLabel.setText("Password for '" + account + "': " + new String(password));
+            Arrays.fill(password, '\0');
+        } catch (IOException | GeneralSecurityException e) {
+            JOptionPane.showMessageDialog(this, "Error decrypting: " + e.getMessage());
         }
-        displayArea.setText(sb.toString());
     }
 
-    private String encrypt(String input) {
-        char[] key = { 'K', 'C', 'Q' };
-        StringBuilder output = new StringBuilder();
+    private void importAccounts() {
+        JFileChooser fileChooser = new JFileChooser();
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        Path file = fileChooser.getSelectedFile().toPath();
+        char[] passphrase = null;
+        try {
+            if (VaultImport.isPortable(file)) {
+                passphrase = askPassword("Export Passphrase for " + file.getFileName());
+                if (passphrase == null)
+                    return;
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Error importing: " + e.getMessage());
+            return;
+        }
+        startTransfer(true);
+        new ImportWorker(file, passphrase).execute();
+    }
 
-        for (int i = 0; i < input.length(); i++) {
-            output.append((char) (input.charAt(i) ^ key[i % key.length]));
+    private void exportAccounts() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("passwords.pmx"));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        char[] passphrase = askPassword("Choose an Export Passphrase");
+        if (passphrase == null)
+            return;
+        char[] confirm = askPassword("Confirm Export Passphrase");
+        boolean same = confirm != null && passphrase.length > 0 && Arrays.equals(passphrase, confirm);
+        if (confirm != null)
+            Arrays.fill(confirm, '\0');
+        if (!same) {
+            Arrays.fill(passphrase, '\0');
+            JOptionPane.showMessageDialog(this, "Passphrases do not match.");
+            return;
         }
+        startTransfer(false);
+        ExportWorker worker = new ExportWorker(fileChooser.getSelectedFile().toPath(), passphrase);
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()))
+                progressBar.setValue((Integer) e.getNewValue());
+        });
+        worker.execute();
+    }
+
+    // Null if cancelled
+    private char[] askPassword(String title) {
+        JPasswordField field = new JPasswordField();
+        int option = JOptionPane.showConfirmDialog(this, field, title, JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE);
+        char[] password = field.getPassword();
+        if (option == JOptionPane.OK_OPTION)
+            return password;
+        Arrays.fill(password, '\0');
+        return null;
+    }
+
+    // Only one import or export runs at a time; the vault stays usable
+    private void startTransfer(boolean indeterminate) {
+        importButton.setEnabled(false);
+        exportButton.setEnabled(false);
+        progressBar.setValue(0);
+        progressBar.setIndeterminate(indeterminate);
+        progressBar.setStringPainted(!indeterminate);
+        progressBar.setVisible(true);
+    }
 
-        return Base64.getEncoder().encodeToString(output.toString().getBytes());
+    private void endTransfer() {
+        importButton.setEnabled(true);
+        exportButton.setEnabled(true);
+        progressBar.setIndeterminate(false);
+        progressBar.setVisible(false);
     }
 
-    private String decrypt(String input) {
+    private String transferError(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof AEADBadTagException)
+            return "Incorrect passphrase, or the file has been altered.";
+        return cause.getMessage();
+    }
+
+    // Reads a CSV, JSON or exported file and adds the accounts the vault does
+    // not have yet, sealing them in parallel and committing them in one write
+    private class ImportWorker extends SwingWorker<Integer, Void> {
+        private final Path file;
+        private final char[] passphrase;
+        private VaultImport.Batch batch;
+
+        ImportWorker(Path file, char[] passphrase) {
+            this.file = file;
+            this.passphrase = passphrase;
+        }
+
+        protected Integer doInBackground() throws Exception {
+            try {
+                batch = passphrase != null ? VaultImport.parsePortable(file, passphrase) : VaultImport.parse(file);
+            } finally {
+                if (passphrase != null)
+                    Arrays.fill(passphrase, '\0');
+            }
+            ExecutorService executor = VaultImport.newExecutor();
+            try {
+                return vault.putAll(batch.accounts(), batch.passwords(), executor);
+            } finally {
+                executor.shutdownNow();
+                batch.wipe();
+            }
+        }
+
+        protected void done() {
+            endTransfer();
+            updateDisplay();
+            try {
+                int added = get();
+                int present = batch.count() - added;
+                JOptionPane.showMessageDialog(PasswordManager.this, "Imported " + added + " account(s) from "
+                        + file.getFileName() + "."
+                        + (present > 0 ? "\nLeft " + present + " account(s) already in the vault unchanged." : "")
+                        + (batch.duplicates() > 0 ? "\nIgnored " + batch.duplicates()
+                                + " repeated account(s); the first of each was used." : "")
+                        + (batch.skipped() > 0 ? "\nSkipped " + batch.skipped()
+                                + " entry(s) without an account or password." : ""));
+            } catch (ExecutionException e) {
+                JOptionPane.showMessageDialog(PasswordManager.this, "Error importing: " + transferError(e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Writes every account to a file sealed under its own passphrase, which
+    // Import... on another vault can read back
+    private class ExportWorker extends SwingWorker<Integer, Void> {
+        private final Path file;
+        private final char[] passphrase;
+
+        ExportWorker(Path file, char[] passphrase) {
+            this.file = file;
+            this.passphrase = passphrase;
+        }
+
+        protected Integer doInBackground() throws Exception {
+            int total = Math.max(1, vault.size());
+            ExecutorService executor = VaultImport.newExecutor();
+            try {
+                return VaultExport.export(vault, file, passphrase, VaultCrypto.Kdf.DEFAULT, executor,
+                        written -> setProgress((int) Math.min(100, (long) written * 100 / total)));
+            } finally {
+                executor.shutdownNow();
+                Arrays.fill(passphrase, '\0');
+            }
+        }
+
+        protected void done() {
+            endTransfer();
+            try {
+                JOptionPane.showMessageDialog(PasswordManager.this, "Exported " + get() + " account(s) to "
+                        + file.getFileName() + ".");
+            } catch (ExecutionException e) {
+                JOptionPane.showMessageDialog(PasswordManager.this, "Error exporting: " + transferError(e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void updateDisplay() {
+        String query = searchField.getText().trim();
+        accountModel.setAccounts(query.isEmpty() ? vault.accounts() : vault.search(query, SEARCH_LIMIT));
+        searchResultLabel.setText(" ");
+    }
+
+    // Reverses the XOR obfuscation of the legacy passwords.txt format
+    private static char[] decodeLegacy(String input) {
         byte[] decoded = Base64.getDecoder().decode(input);
         char[] key = { 'K', 'C', 'Q' };
-        StringBuilder output = new StringBuilder();
+        char[] output = new char[decoded.length];
 
         for (int i = 0; i < decoded.length; i++) {
-            output.append((char) (decoded[i] ^ key[i % key.length]));
+            output[i] = (char) ((decoded[i] ^ key[i % key.length]) & 0xff);
+        }
+
+        Arrays.fill(decoded, (byte) 0);
+        return output;
+    }
+
+    private static class AccountListModel extends AbstractListModel<String> {
+        private List<String> accounts = new ArrayList<>();
+
+        void setAccounts(List<String> accounts) {
+            int old = this.accounts.size();
+            this.accounts = accounts;
+            if (old > 0)
+                fireIntervalRemoved(this, 0, old - 1);
+            if (!accounts.isEmpty())
+                fireIntervalAdded(this, 0, accounts.size() - 1);
         }
 
-        return output.toString();
+        public int getSize() {
+            return accounts.size();
+        }
+
+        public String getElementAt(int index) {
+            return accounts.get(index);
+        }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,463 @@
+package vault;
+
+import java.util.*;
+
+// Ranked, case-insensitive type-ahead search over account names. Matches
+// rank as exact, then prefix, then starting at a word (after a separator such
+// as '-', '.', '@' or a space), then anywhere, and within a rank by shorter
+// name and then alphabetically, keeping only the best few in a bounded heap.
+//
+// Names starting with the query are one run of the ids sorted by lowercased
+// name, found with two binary searches. Each trigram of a lowercased name
+// maps to a sorted list of name ids, and so do its single characters and
+// pairs for the first keystrokes. When the query's rarest gram is in few
+// names, the other matches are found by checking just those. A common query
+// instead walks the ids sorted by length then name, the order ties rank in,
+// and stops at the first name that could not beat the worst kept even as a
+// word match. If that leaves room, names sharing at least half of the query's
+// trigrams are added last, most shared first, so a typo such as "githbu"
+// still finds "github-work".
+//
+// The index lives only in memory and is kept up to date as accounts are
+// added and removed.
+public class AccountSearch {
+    private static final int EXACT = 0, PREFIX = 1, WORD = 2, SUBSTRING = 3, FUZZY = 4;
+
+    private final Map<Long, Postings> grams = new HashMap<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[16];
+    private String[] lowerNames = new String[16];
+    private int[] free = new int[16];
+    private int freeCount, nextId;
+    // Scratch for counting shared trigrams, all zero between searches
+    private int[] hits = new int[16];
+    // Ids by lowercased name and by length then name, sorted on demand.
+    // Names added since are kept in recent and checked one by one; ids
+    // removed since stay in place but are no longer marked sorted.
+    private int[] byName, byNameLengths, byLength;
+    private String[] byNameKeys;
+    private boolean[] sorted = new boolean[16];
+    // Position of each sorted id in byLength
+    private int[] lengthOrder = new int[16];
+    private int[] recent = new int[16];
+    private int recentCount, removedSince;
+
+    public void add(String name) {
+        if (ids.containsKey(name))
+            return;
+        int id = freeCount > 0 ? free[--freeCount] : nextId++;
+        if (id >= names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+            lowerNames = Arrays.copyOf(lowerNames, names.length);
+            hits = Arrays.copyOf(hits, names.length);
+            sorted = Arrays.copyOf(sorted, names.length);
+            lengthOrder = Arrays.copyOf(lengthOrder, names.length);
+        }
+        String lower = name.toLowerCase(Locale.ROOT);
+        ids.put(name, id);
+        names[id] = name;
+        lowerNames[id] = lower;
+        if (recentCount == recent.length)
+            recent = Arrays.copyOf(recent, recentCount * 2);
+        recent[recentCount++] = id;
+        for (int i = 0; i < lower.length(); i++) {
+            for (int n = 1; n <= 3 && i + n <= lower.length(); n++)
+                grams.computeIfAbsent(gram(lower, i, n), k -> new Postings()).add(id);
+        }
+    }
+
+    public void remove(String name) {
+        Integer boxed = ids.remove(name);
+        if (boxed == null)
+            return;
+        int id = boxed;
+        String lower = lowerNames[id];
+        for (int i = 0; i < lower.length(); i++) {
+            for (int n = 1; n <= 3 && i + n <= lower.length(); n++) {
+                Long key = gram(lower, i, n);
+                Postings p = grams.get(key);
+                if (p != null && p.remove(id) && p.size == 0)
+                    grams.remove(key);
+            }
+        }
+        names[id] = null;
+        lowerNames[id] = null;
+        if (sorted[id]) {
+            sorted[id] = false;
+            removedSince++;
+        } else {
+            for (int i = 0; i < recentCount; i++) {
+                if (recent[i] == id) {
+                    recent[i] = recent[--recentCount];
+                    break;
+                }
+            }
+        }
+        if (freeCount == free.length)
+            free = Arrays.copyOf(free, freeCount * 2);
+        free[freeCount++] = id;
+    }
+
+    public void clear() {
+        grams.clear();
+        ids.clear();
+        names = new String[16];
+        lowerNames = new String[16];
+        hits = new int[16];
+        byName = byNameLengths = byLength = null;
+        byNameKeys = null;
+        sorted = new boolean[16];
+        lengthOrder = new int[16];
+        recent = new int[16];
+        recentCount = removedSince = 0;
+        freeCount = 0;
+        nextId = 0;
+    }
+
+    // Re-sorts the ids once the names added or removed since the last sort
+    // are more than a search should check or skip one by one
+    void sort() {
+        if (byName != null && recentCount + removedSince <= Math.max(64, ids.size() / 64))
+            return;
+        Integer[] live = new Integer[ids.size()];
+        int n = 0;
+        for (int id = 0; id < nextId; id++) {
+            if (names[id] != null)
+                live[n++] = id;
+        }
+        Arrays.sort(live, Comparator.comparing(id -> lowerNames[id]));
+        byName = new int[n];
+        byNameLengths = new int[n];
+        byNameKeys = new String[n];
+        for (int i = 0; i < n; i++) {
+            byName[i] = live[i];
+            byNameLengths[i] = names[live[i]].length();
+            byNameKeys[i] = lowerNames[live[i]];
+        }
+        Arrays.sort(live, Comparator.<Integer>comparingInt(id -> names[id].length()).thenComparing(id -> names[id]));
+        byLength = new int[n];
+        for (int i = 0; i < n; i++) {
+            byLength[i] = live[i];
+            lengthOrder[live[i]] = i;
+            sorted[live[i]] = true;
+        }
+        recentCount = removedSince = 0;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    // Ranks names by checking every one, without the fuzzy matches; for use
+    // until an index has been built
+    public static List<String> scan(Collection<String> names, String query, int limit) {
+        AccountSearch all = new AccountSearch();
+        all.names = names.toArray(new String[0]);
+        String q = query.toLowerCase(Locale.ROOT);
+        Ranking ranking = all.new Ranking(limit);
+        for (int id = 0; id < all.names.length && !q.isEmpty(); id++) {
+            String lower = all.names[id].toLowerCase(Locale.ROOT);
+            int at = lower.indexOf(q);
+            if (at >= 0)
+                ranking.offer(id, rank(lower, q, at), 0);
+        }
+        return ranking.names();
+    }
+
+    // Up to limit names matching query, best first
+    public List<String> search(String query, int limit) {
+        String q = query.toLowerCase(Locale.ROOT);
+        Ranking ranking = new Ranking(limit);
+        if (q.isEmpty() || limit <= 0)
+            return ranking.names();
+        sort();
+        for (int i = 0; i < recentCount; i++) {
+            int id = recent[i];
+            int at = lowerNames[id].indexOf(q);
+            if (at >= 0)
+                ranking.offer(id, rank(lowerNames[id], q, at), 0);
+        }
+        prefixed(q, ranking);
+        // The rest rank as word matches at best
+        if (!ranking.admitsAny(WORD, 0))
+            return ranking.names();
+
+        int n = Math.min(3, q.length());
+        List<Postings> lists = new ArrayList<>();
+        boolean missing = false;
+        for (int i = 0; i + n <= q.length(); i++) {
+            Postings p = grams.get(gram(q, i, n));
+            if (p == null)
+                missing = true;
+            else
+                lists.add(p);
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        if (!missing) {
+            // When many names hold the query's rarest gram, the shortest few
+            // usually fill the heap with word matches; if they do not, the
+            // lists take over after as many names as they would check
+            Postings smallest = lists.get(0);
+            int walked = smallest.size * 16L > ids.size() ? shortestFirst(q, ranking, smallest.size) : 0;
+            if (walked < byLength.length)
+                inside(q, smallest, walked, ranking);
+        }
+        int queryGrams = q.length() - 2;
+        if (ranking.size() < limit && queryGrams >= 2)
+            fuzzy(q, lists, (queryGrams + 1) / 2, !missing, ranking);
+        return ranking.names();
+    }
+
+    // Offers the sorted names starting with q. They run from the first name
+    // not below q to the first after it that does not start with it, and
+    // those equal to q come first; the rest are settled by length alone
+    // unless they tie with the worst kept.
+    private void prefixed(String q, Ranking ranking) {
+        int i = runEnd(q, false), end = runEnd(q, true);
+        for (; i < end && byNameKeys[i].length() == q.length(); i++) {
+            if (sorted[byName[i]])
+                ranking.offer(byName[i], EXACT, 0);
+        }
+        for (; i < end; i++) {
+            if (!ranking.admitsAny(PREFIX, byNameLengths[i]))
+                continue;
+            int id = byName[i];
+            if (sorted[id] && ranking.admits(id, PREFIX))
+                ranking.offer(id, PREFIX, 0);
+        }
+    }
+
+    // Position of the first sorted name not below q, or with started, of the
+    // first one after those that start with q
+    private int runEnd(String q, boolean started) {
+        int lo = 0, hi = byNameKeys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            String key = byNameKeys[mid];
+            if (key.compareTo(q) < 0 || started && key.startsWith(q))
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Offers the sorted names holding q but not starting with it, checking
+    // those in the list of its rarest gram that come after the first walked
+    // by length
+    private void inside(String q, Postings smallest, int walked, Ranking ranking) {
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+            if (!sorted[id] || lengthOrder[id] < walked || !ranking.admits(id, WORD)
+                    || lowerNames[id].startsWith(q))
+                continue;
+            int at = lowerNames[id].indexOf(q);
+            if (at >= 0)
+                ranking.offer(id, rank(lowerNames[id], q, at), 0);
+        }
+    }
+
+    // As inside, shortest name first, giving up after budget names: once a
+    // name could not place even as a word match, no longer one can either.
+    // Returns how many sorted names were walked, all of them if it stopped.
+    private int shortestFirst(String q, Ranking ranking, int budget) {
+        for (int i = 0; i < byLength.length; i++) {
+            int id = byLength[i];
+            if (!sorted[id])
+                continue;
+            if (!ranking.admits(id, WORD))
+                return byLength.length;
+            if (i == budget)
+                return i;
+            String lower = lowerNames[id];
+            int at = lower.indexOf(q);
+            if (at > 0)
+                ranking.offer(id, rank(lower, q, at), 0);
+        }
+        return byLength.length;
+    }
+
+    // Offers names that share at least minShared trigrams with q but do not
+    // contain it; only names with every trigram can contain it
+    private void fuzzy(String q, List<Postings> lists, int minShared, boolean complete, Ranking ranking) {
+        if (lists.size() < minShared)
+            return;
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (Postings p : lists) {
+            for (int i = 0; i < p.size; i++) {
+                int id = p.ids[i];
+                if (hits[id]++ == 0) {
+                    if (touchedCount == touched.length)
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    touched[touchedCount++] = id;
+                }
+            }
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touched[i];
+            if (hits[id] >= minShared && !(complete && hits[id] == lists.size() && lowerNames[id].contains(q)))
+                ranking.offer(id, FUZZY, lists.size() - hits[id]);
+            hits[id] = 0;
+        }
+    }
+
+    // The rank lower gets if it contains q, or a better one: exact and prefix
+    // are settled here, the rest need the search that rank() does
+    private static int bestRank(String lower, String q) {
+        if (!lower.startsWith(q))
+            return WORD;
+        return lower.length() == q.length() ? EXACT : PREFIX;
+    }
+
+    private static int rank(String lower, String q, int at) {
+        if (at == 0)
+            return lower.length() == q.length() ? EXACT : PREFIX;
+        // indexOf found the first occurrence; a later one may start a word
+        for (; at > 0; at = lower.indexOf(q, at + 1)) {
+            if (!Character.isLetterOrDigit(lower.charAt(at - 1)))
+                return WORD;
+        }
+        return SUBSTRING;
+    }
+
+    // The n characters at i, with n in the top bits so lengths do not collide
+    private static long gram(String s, int i, int n) {
+        long key = n;
+        for (int k = 0; k < n; k++)
+            key = key << 16 | s.charAt(i + k);
+        return key;
+    }
+
+    // The best limit matches seen so far, in a heap with the worst on top.
+    // An entry's key packs rank, tiebreak and name length so most offers are
+    // settled by one comparison; names are compared only on equal keys.
+    private class Ranking {
+        private final int limit;
+        private long[] keys;
+        private int[] entries;
+        private int size;
+
+        Ranking(int limit) {
+            this.limit = limit;
+            keys = new long[Math.max(1, Math.min(limit, 1024))];
+            entries = new int[keys.length];
+        }
+
+        // tiebreak must be below 2^24; lower ranks and tiebreaks are better
+        void offer(int id, int rank, int tiebreak) {
+            if (limit <= 0)
+                return;
+            long key = key(id, rank, tiebreak);
+            if (size < limit) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    entries = Arrays.copyOf(entries, size * 2);
+                }
+                keys[size] = key;
+                entries[size] = id;
+                up(size++);
+            } else if (compare(key, id, keys[0], entries[0]) < 0) {
+                keys[0] = key;
+                entries[0] = id;
+                down(0);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        // Whether id could still get in with rank or any worse one
+        boolean admits(int id, int rank) {
+            return size < limit || compare(key(id, rank, 0), id, keys[0], entries[0]) < 0;
+        }
+
+        // Whether some name of this length could get in with rank; true on a
+        // tie, which only the names can settle
+        boolean admitsAny(int rank, int length) {
+            return size < limit || ((long) rank << 48 | Math.min(length, 0xffffff)) <= keys[0];
+        }
+
+        private long key(int id, int rank, int tiebreak) {
+            return (long) rank << 48 | (long) tiebreak << 24 | Math.min(names[id].length(), 0xffffff);
+        }
+
+        List<String> names() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> compare(keys[a], entries[a], keys[b], entries[b]));
+            List<String> result = new ArrayList<>(size);
+            for (int i : order)
+                result.add(names[entries[i]]);
+            return result;
+        }
+
+        private int compare(long keyA, int idA, long keyB, int idB) {
+            if (keyA != keyB)
+                return Long.compare(keyA, keyB);
+            return names[idA].compareTo(names[idB]);
+        }
+
+        private void up(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (compare(keys[i], entries[i], keys[parent], entries[parent]) <= 0)
+                    return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void down(int i) {
+            while (true) {
+                int worst = i, left = 2 * i + 1, right = left + 1;
+                if (left < size && compare(keys[left], entries[left], keys[worst], entries[worst]) > 0)
+                    worst = left;
+                if (right < size && compare(keys[right], entries[right], keys[worst], entries[worst]) > 0)
+                    worst = right;
+                if (worst == i)
+                    return;
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            int id = entries[a];
+            entries[a] = entries[b];
+            entries[b] = id;
+        }
+    }
+
+    // Sorted, duplicate-free id list
+    private static class Postings {
+        int[] ids = new int[4];
+        int size = 0;
+
+        void add(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0)
+                return;
+            pos = -pos - 1;
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0)
+                return false;
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+    }
+}
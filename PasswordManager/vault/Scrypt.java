@@ -0,0 +1,162 @@
+package vault;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// scrypt (RFC 7914): PBKDF2-HMAC-SHA256 around a memory-hard mix that needs
+// 128 * r * n bytes of memory per lane, so guessing passwords on GPUs or
+// ASICs costs memory as well as time. The JDK has no memory-hard KDF.
+final class Scrypt {
+    private Scrypt() {
+    }
+
+    // n must be a power of two greater than 1
+    static byte[] derive(byte[] password, byte[] salt, int n, int r, int p, int length)
+            throws GeneralSecurityException {
+        if (n < 2 || (n & (n - 1)) != 0)
+            throw new IllegalArgumentException("n must be a power of two");
+        if (r < 1 || p < 1 || (long) r * p >= 1 << 30 || (long) n * r > Integer.MAX_VALUE / 32)
+            throw new IllegalArgumentException("scrypt parameters out of range");
+        int blockInts = 32 * r;
+        byte[] b = pbkdf2(password, salt, p * 4 * blockInts);
+        int[] x = new int[blockInts];
+        int[] v = new int[blockInts * n];
+        int[] scratch = new int[16];
+        int[] y = new int[blockInts];
+        try {
+            for (int lane = 0; lane < p; lane++) {
+                int offset = lane * 4 * blockInts;
+                for (int i = 0; i < blockInts; i++)
+                    x[i] = littleEndian(b, offset + 4 * i);
+                roMix(x, v, y, scratch, r, n);
+                for (int i = 0; i < blockInts; i++)
+                    putLittleEndian(b, offset + 4 * i, x[i]);
+            }
+            return pbkdf2(password, b, length);
+        } finally {
+            Arrays.fill(b, (byte) 0);
+            Arrays.fill(x, 0);
+            Arrays.fill(v, 0);
+            Arrays.fill(y, 0);
+        }
+    }
+
+    private static void roMix(int[] x, int[] v, int[] y, int[] scratch, int r, int n) {
+        int blockInts = 32 * r;
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(x, 0, v, i * blockInts, blockInts);
+            blockMix(x, y, scratch, r);
+        }
+        for (int i = 0; i < n; i++) {
+            int j = x[(2 * r - 1) * 16] & (n - 1);
+            int base = j * blockInts;
+            for (int k = 0; k < blockInts; k++)
+                x[k] ^= v[base + k];
+            blockMix(x, y, scratch, r);
+        }
+    }
+
+    // Mixes the 2r 64-byte blocks of b in place; y is scratch of the same size
+    private static void blockMix(int[] b, int[] y, int[] x, int r) {
+        System.arraycopy(b, (2 * r - 1) * 16, x, 0, 16);
+        for (int i = 0; i < 2 * r; i++) {
+            for (int k = 0; k < 16; k++)
+                x[k] ^= b[i * 16 + k];
+            salsa20_8(x);
+            // Even blocks go to the first half, odd ones to the second
+            int dest = (i / 2 + (i % 2) * r) * 16;
+            System.arraycopy(x, 0, y, dest, 16);
+        }
+        System.arraycopy(y, 0, b, 0, 32 * r);
+    }
+
+    private static void salsa20_8(int[] b) {
+        int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3], x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7];
+        int x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11], x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+        for (int i = 0; i < 8; i += 2) {
+            x4 ^= Integer.rotateLeft(x0 + x12, 7);
+            x8 ^= Integer.rotateLeft(x4 + x0, 9);
+            x12 ^= Integer.rotateLeft(x8 + x4, 13);
+            x0 ^= Integer.rotateLeft(x12 + x8, 18);
+            x9 ^= Integer.rotateLeft(x5 + x1, 7);
+            x13 ^= Integer.rotateLeft(x9 + x5, 9);
+            x1 ^= Integer.rotateLeft(x13 + x9, 13);
+            x5 ^= Integer.rotateLeft(x1 + x13, 18);
+            x14 ^= Integer.rotateLeft(x10 + x6, 7);
+            x2 ^= Integer.rotateLeft(x14 + x10, 9);
+            x6 ^= Integer.rotateLeft(x2 + x14, 13);
+            x10 ^= Integer.rotateLeft(x6 + x2, 18);
+            x3 ^= Integer.rotateLeft(x15 + x11, 7);
+            x7 ^= Integer.rotateLeft(x3 + x15, 9);
+            x11 ^= Integer.rotateLeft(x7 + x3, 13);
+            x15 ^= Integer.rotateLeft(x11 + x7, 18);
+            x1 ^= Integer.rotateLeft(x0 + x3, 7);
+            x2 ^= Integer.rotateLeft(x1 + x0, 9);
+            x3 ^= Integer.rotateLeft(x2 + x1, 13);
+            x0 ^= Integer.rotateLeft(x3 + x2, 18);
+            x6 ^= Integer.rotateLeft(x5 + x4, 7);
+            x7 ^= Integer.rotateLeft(x6 + x5, 9);
+            x4 ^= Integer.rotateLeft(x7 + x6, 13);
+            x5 ^= Integer.rotateLeft(x4 + x7, 18);
+            x11 ^= Integer.rotateLeft(x10 + x9, 7);
+            x8 ^= Integer.rotateLeft(x11 + x10, 9);
+            x9 ^= Integer.rotateLeft(x8 + x11, 13);
+            x10 ^= Integer.rotateLeft(x9 + x8, 18);
+            x12 ^= Integer.rotateLeft(x15 + x14, 7);
+            x13 ^= Integer.rotateLeft(x12 + x15, 9);
+            x14 ^= Integer.rotateLeft(x13 + x12, 13);
+            x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        }
+        b[0] += x0;
+        b[1] += x1;
+        b[2] += x2;
+        b[3] += x3;
+        b[4] += x4;
+        b[5] += x5;
+        b[6] += x6;
+        b[7] += x7;
+        b[8] += x8;
+        b[9] += x9;
+        b[10] += x10;
+        b[11] += x11;
+        b[12] += x12;
+        b[13] += x13;
+        b[14] += x14;
+        b[15] += x15;
+    }
+
+    // PBKDF2-HMAC-SHA256 with one iteration, as scrypt uses it
+    static byte[] pbkdf2(byte[] password, byte[] salt, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        // SecretKeySpec rejects an empty key; a zero block is the same HMAC key
+        mac.init(new SecretKeySpec(password.length == 0 ? new byte[64] : password, "HmacSHA256"));
+        byte[] out = new byte[length];
+        byte[] counter = new byte[4];
+        for (int block = 1, done = 0; done < length; block++) {
+            counter[0] = (byte) (block >>> 24);
+            counter[1] = (byte) (block >>> 16);
+            counter[2] = (byte) (block >>> 8);
+            counter[3] = (byte) block;
+            mac.update(salt);
+            byte[] t = mac.doFinal(counter);
+            int n = Math.min(t.length, length - done);
+            System.arraycopy(t, 0, out, done, n);
+            Arrays.fill(t, (byte) 0);
+            done += n;
+        }
+        return out;
+    }
+
+    private static int littleEndian(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    private static void putLittleEndian(byte[] b, int i, int v) {
+        b[i] = (byte) v;
+        b[i + 1] = (byte) (v >>> 8);
+        b[i + 2] = (byte) (v >>> 16);
+        b[i + 3] = (byte) (v >>> 24);
+    }
+}
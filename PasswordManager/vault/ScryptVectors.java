@@ -0,0 +1,45 @@
+package vault;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+// Checks Scrypt against the test vectors of RFC 7914, section 12, and the
+// PBKDF2-HMAC-SHA256 vector of section 11. Every vault key comes from
+// Scrypt.derive, so a change to blockMix or salsa20_8 that alters its output
+// would lock users out of their vaults. The last vector (N = 2^20, 1 GiB) is
+// left out. Exits with 1 if any check failed.
+//
+//   java -cp <classes> vault.ScryptVectors
+class ScryptVectors {
+    public static void main(String[] args) throws Exception {
+        int failed = 0;
+        failed += check("pbkdf2 passwd/salt", Scrypt.pbkdf2(bytes("passwd"), bytes("salt"), 64),
+                "55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+                        + "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783");
+        failed += check("empty, N=16, r=1, p=1", Scrypt.derive(bytes(""), bytes(""), 16, 1, 1, 64),
+                "77d6576238657b203b19ca42c18a0497f16b4844e3074ae8dfdffa3fede21442"
+                        + "fcd0069ded0948f8326a753a0fc81f17e8d3e0fb2e0d3628cf35e20c38d18906");
+        failed += check("password/NaCl, N=1024, r=8, p=16",
+                Scrypt.derive(bytes("password"), bytes("NaCl"), 1024, 8, 16, 64),
+                "fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162"
+                        + "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640");
+        failed += check("pleaseletmein/SodiumChloride, N=16384, r=8, p=1",
+                Scrypt.derive(bytes("pleaseletmein"), bytes("SodiumChloride"), 16384, 8, 1, 64),
+                "7023bdcb3afd7348461c06cd81fd38ebfda8fbba904f8e3ea9b543f6545da1f2"
+                        + "d5432955613f0fcf62d49705242a9af9e61e85dc0d651e40dfcf017b45575887");
+        System.out.println(failed == 0 ? "All scrypt vectors match" : failed + " scrypt vector(s) failed");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static int check(String name, byte[] actual, String expected) {
+        String hex = HexFormat.of().formatHex(actual);
+        if (hex.equals(expected))
+            return 0;
+        System.out.println("FAIL " + name + "\n  expected " + expected + "\n  got      " + hex);
+        return 1;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,739 @@
+package vault;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.crypto.AEADBadTagException;
+
+// An encrypted password vault file. The header holds the KDF parameters and
+// salt and is followed by a verifier, an empty value sealed with the header
+// as associated data, so a wrong password or an edited header fails at
+// unlock. After that the file is a log of frames, each sealed on its own
+// with a fresh nonce:
+//
+//   RECORD  an account name and its password
+//   DELETE  an account name whose earlier records no longer count
+//   INDEX   account names mapped to the offsets of their live records
+//
+// A change appends one frame and forces it to disk, so it costs one record
+// whatever the size of the vault, and a crash loses at most the frame being
+// written, which is cut off at the next unlock. Unlock reads the last INDEX
+// and replays the frames after it. Once superseded frames and the unindexed
+// tail outgrow the live records, a background thread compacts the log into
+// a new file of live records plus a fresh INDEX, copying records still
+// sealed, and swaps it in.
+//
+// The file is memory-mapped and a password is decrypted from its record
+// when asked for, so the only cleartext kept on the heap is account names,
+// which also feed an in-memory AccountSearch. The background thread builds
+// it at unlock; searches made before it is ready scan the names instead.
+// Every frame's associated data is the header plus its type byte, which ties
+// it to this vault and its role, and a record holds its account name so the
+// index cannot point elsewhere.
+public final class Vault implements AutoCloseable {
+    private static final byte[] MAGIC = { 'P', 'M', 'V', '1' };
+    private static final int VERSION = 2;
+    private static final int SALT_BYTES = 16;
+    private static final int HEADER_BYTES = MAGIC.length + 4 + SALT_BYTES;
+    private static final int FIRST_FRAME = HEADER_BYTES + VaultCrypto.OVERHEAD;
+    private static final int FRAME_HEADER = 5;
+    private static final byte RECORD = 'R', DELETE = 'D', INDEX = 'I';
+    // Largest sealed record accepted; the index may be bigger
+    private static final int MAX_RECORD = 1 << 20;
+    // Dead or unindexed frames tolerated before compacting
+    private static final int COMPACT_MIN = 1024;
+    // Records sealed per task by putAll
+    private static final int PUT_CHUNK = 1024;
+
+    private final Path path;
+    private final byte[] header;
+    private final VaultCrypto crypto;
+    // Builds the search index, then runs compactions
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "vault-background");
+        t.setDaemon(true);
+        return t;
+    });
+    // Account name to record offset << 24 | sealed length
+    private TreeMap<String, Long> locations = new TreeMap<>();
+    // Built in the background at unlock, then kept up to date; null until
+    // then, while searchChanged collects the names added or removed
+    private AccountSearch search;
+    private Set<String> searchChanged;
+    private FileChannel channel;
+    // Maps the file up to end or less; remapped when a read goes past it
+    private MappedByteBuffer mapped;
+    private long end;
+    // Frames no longer live, and frames after the last INDEX
+    private int garbage, tail;
+    // Accounts changed while a compaction runs, or null
+    private Set<String> changed;
+    private boolean closed;
+    // Set from a compaction's rename until its directory has been forced;
+    // nothing is committed to the new file before then
+    private boolean renamed;
+
+    private Vault(Path path, byte[] header, VaultCrypto crypto) {
+        this.path = path;
+        this.header = header;
+        this.crypto = crypto;
+    }
+
+    public static boolean exists(Path path) {
+        return Files.isRegularFile(path);
+    }
+
+    // Creates an empty vault, replacing any file at path; master is left for
+    // the caller to wipe
+    public static Vault create(Path path, char[] master, VaultCrypto.Kdf kdf)
+            throws IOException, GeneralSecurityException {
+        byte[] header = ByteBuffer.allocate(HEADER_BYTES).put(MAGIC)
+                .put((byte) VERSION).put((byte) kdf.logN).put((byte) kdf.r).put((byte) kdf.p)
+                .put(VaultCrypto.randomBytes(SALT_BYTES)).array();
+        Vault vault = new Vault(path, header, VaultCrypto.derive(master, salt(header), kdf));
+        try {
+            Path tmp = tempPath(path);
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                vault.end = vault.rewrite(out, new TreeMap<>(), null, vault.locations);
+                out.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(path);
+            vault.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            vault.mapped = map(vault.channel, vault.end);
+            vault.buildSearch();
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            vault.close();
+            throw e;
+        }
+        return vault;
+    }
+
+    // Throws AEADBadTagException for a wrong password or a damaged file
+    public static Vault open(Path path, char[] master) throws IOException, GeneralSecurityException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Vault vault = null;
+        try {
+            MappedByteBuffer mapped = map(channel, channel.size());
+            if (mapped.capacity() < FIRST_FRAME)
+                throw new AEADBadTagException("Vault file is truncated");
+            byte[] header = new byte[HEADER_BYTES];
+            mapped.get(0, header);
+            if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC))
+                throw new IOException("Not a vault file");
+            if (header[MAGIC.length] != VERSION)
+                throw new IOException("Unsupported vault version " + header[MAGIC.length]);
+            VaultCrypto.Kdf kdf;
+            try {
+                kdf = new VaultCrypto.Kdf(header[5], header[6], header[7]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Damaged vault header");
+            }
+
+            vault = new Vault(path, header, VaultCrypto.derive(master, salt(header), kdf));
+            vault.channel = channel;
+            vault.crypto.open(mapped.slice(HEADER_BYTES, VaultCrypto.OVERHEAD), header);
+            vault.mapped = mapped;
+            vault.replay();
+            vault.buildSearch();
+            return vault;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            if (vault != null) {
+                // Leave a damaged log as it is rather than indexing it
+                vault.tail = 0;
+                vault.close();
+            } else
+                channel.close();
+            throw e;
+        }
+    }
+
+    // Loads the last INDEX and applies the frames after it. A last frame cut
+    // off by a crash, or zeros or garbage left where the next frame should
+    // start, is truncated away. A bad frame header with a frame that opens
+    // somewhere after it is damage, never a torn tail, and is rejected.
+    private void replay() throws IOException, GeneralSecurityException {
+        int capacity = mapped.capacity();
+        List<Integer> frames = new ArrayList<>();
+        int position = FIRST_FRAME;
+        while (capacity - position >= FRAME_HEADER) {
+            byte type = mapped.get(position);
+            int length = mapped.getInt(position + 1);
+            if (!validFrame(type, length) || length > capacity - position - FRAME_HEADER) {
+                if (sealedFrameAfter(position + 1))
+                    throw new AEADBadTagException("Damaged vault record");
+                break;
+            }
+            frames.add(position);
+            position += FRAME_HEADER + length;
+        }
+
+        int lastIndex = frames.size() - 1;
+        while (true) {
+            while (lastIndex >= 0 && mapped.get(frames.get(lastIndex)) != INDEX)
+                lastIndex--;
+            if (lastIndex == -1)
+                throw new AEADBadTagException("Vault index is missing");
+            try {
+                readIndex(frames.get(lastIndex));
+                break;
+            } catch (AEADBadTagException e) {
+                // An INDEX torn while closing; fall back to the one before
+                if (lastIndex != frames.size() - 1)
+                    throw e;
+                position = frames.remove(lastIndex--);
+            }
+        }
+
+        int valid = frames.size();
+        for (int i = lastIndex + 1; i < frames.size(); i++) {
+            int frame = frames.get(i);
+            byte type = mapped.get(frame);
+            byte[] plain;
+            try {
+                plain = crypto.open(mapped.slice(frame + FRAME_HEADER, mapped.getInt(frame + 1)), aad(type));
+            } catch (AEADBadTagException e) {
+                // Only the last frame can be a torn write
+                if (i < frames.size() - 1)
+                    throw e;
+                position = frame;
+                valid = i;
+                break;
+            }
+            try {
+                if (type == INDEX)
+                    throw new AEADBadTagException("Damaged vault record");
+                if (type == RECORD) {
+                    int accountLength = (plain[0] & 0xff) << 8 | plain[1] & 0xff;
+                    String account = new String(plain, 2, accountLength, StandardCharsets.UTF_8);
+                    locations.put(account, (long) (frame + FRAME_HEADER) << 24 | mapped.getInt(frame + 1));
+                } else {
+                    locations.remove(new String(plain, StandardCharsets.UTF_8));
+                }
+            } finally {
+                Arrays.fill(plain, (byte) 0);
+            }
+            tail++;
+        }
+        garbage = Math.max(0, valid - 1 - locations.size());
+        end = position;
+        if (end < capacity) {
+            channel.truncate(end);
+            channel.force(true);
+            mapped = map(channel, end);
+        }
+    }
+
+    private static boolean validFrame(byte type, int length) {
+        return length >= VaultCrypto.OVERHEAD && (type == RECORD || type == DELETE || type == INDEX)
+                && (type == INDEX || length <= MAX_RECORD);
+    }
+
+    // Whether any frame from position on opens, which means the bad bytes
+    // before it are damage rather than the end of a torn write
+    private boolean sealedFrameAfter(int position) throws GeneralSecurityException {
+        for (int capacity = mapped.capacity(); capacity - position >= FRAME_HEADER; position++) {
+            byte type = mapped.get(position);
+            int length = mapped.getInt(position + 1);
+            if (!validFrame(type, length) || length > capacity - position - FRAME_HEADER)
+                continue;
+            try {
+                Arrays.fill(crypto.open(mapped.slice(position + FRAME_HEADER, length), aad(type)), (byte) 0);
+                return true;
+            } catch (AEADBadTagException e) {
+                // not a frame boundary
+            }
+        }
+        return false;
+    }
+
+    private void readIndex(int frame) throws GeneralSecurityException {
+        byte[] plain = crypto.open(mapped.slice(frame + FRAME_HEADER, mapped.getInt(frame + 1)), aad(INDEX));
+        try {
+            ByteBuffer in = ByteBuffer.wrap(plain);
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] account = new byte[in.getShort() & 0xffff];
+                in.get(account);
+                long offset = in.getLong();
+                int length = in.getInt();
+                if (offset < FIRST_FRAME || length > MAX_RECORD || offset + length > frame)
+                    throw new AEADBadTagException("Damaged vault index");
+                locations.put(new String(account, StandardCharsets.UTF_8), offset << 24 | length);
+            }
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    // Sorted account names
+    public synchronized List<String> accounts() {
+        checkOpen();
+        return new ArrayList<>(locations.keySet());
+    }
+
+    public synchronized boolean contains(String account) {
+        checkOpen();
+        return locations.containsKey(account);
+    }
+
+    public synchronized int size() {
+        return locations.size();
+    }
+
+    // Up to limit account names matching query, best first; see AccountSearch
+    public synchronized List<String> search(String query, int limit) {
+        checkOpen();
+        if (search == null)
+            return AccountSearch.scan(locations.keySet(), query, limit);
+        return search.search(query, limit);
+    }
+
+    // Indexes the current names without the lock, then catches up with the
+    // accounts changed meanwhile and swaps the index in
+    private synchronized void buildSearch() {
+        List<String> names = new ArrayList<>(locations.keySet());
+        searchChanged = new HashSet<>();
+        background.execute(() -> {
+            AccountSearch built = new AccountSearch();
+            for (String account : names)
+                built.add(account);
+            built.sort();
+            synchronized (this) {
+                if (closed)
+                    return;
+                for (String account : searchChanged) {
+                    if (locations.containsKey(account))
+                        built.add(account);
+                    else
+                        built.remove(account);
+                }
+                searchChanged = null;
+                search = built;
+            }
+        });
+    }
+
+    private void searchAdded(String account) {
+        if (search != null)
+            search.add(account);
+        else if (searchChanged != null)
+            searchChanged.add(account);
+    }
+
+    private void searchRemoved(String account) {
+        if (search != null)
+            search.remove(account);
+        else if (searchChanged != null)
+            searchChanged.add(account);
+    }
+
+    // Decrypts the password, or returns null; the caller should wipe it
+    // when done. Decryption runs outside the lock, so exports can read in
+    // parallel; a mapping stays readable after compaction replaces its file.
+    public char[] password(String account) throws IOException, GeneralSecurityException {
+        ByteBuffer sealed;
+        synchronized (this) {
+            checkOpen();
+            Long location = locations.get(account);
+            if (location == null)
+                return null;
+            int offset = (int) (location >>> 24), length = (int) (location & 0xffffff);
+            if (offset + length > mapped.capacity())
+                mapped = map(channel, end);
+            sealed = mapped.slice(offset, length);
+        }
+        byte[] plain = crypto.open(sealed, aad(RECORD));
+        try {
+            int accountLength = (plain[0] & 0xff) << 8 | plain[1] & 0xff;
+            if (!account.equals(new String(plain, 2, accountLength, StandardCharsets.UTF_8)))
+                throw new AEADBadTagException("Vault index does not match record");
+            return VaultCrypto.chars(plain, 2 + accountLength, plain.length - 2 - accountLength);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    // Adds or replaces an account and commits it to disk; password is left
+    // for the caller to wipe
+    public synchronized void put(String account, char[] password) throws IOException, GeneralSecurityException {
+        checkOpen();
+        byte[] name = account.getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xffff)
+            throw new IllegalArgumentException("Account name too long");
+        byte[] plain = plainRecord(name, password);
+        byte[] sealed;
+        try {
+            sealed = crypto.seal(plain, aad(RECORD));
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+        long offset = append(RECORD, List.of(sealed))[0];
+        if (locations.put(account, offset << 24 | sealed.length) != null)
+            garbage++;
+        else
+            searchAdded(account);
+        changed(account);
+    }
+
+    // Removes an account and commits the removal; false if there was none
+    public synchronized boolean remove(String account) throws IOException, GeneralSecurityException {
+        checkOpen();
+        if (!locations.containsKey(account))
+            return false;
+        append(DELETE, List.of(crypto.seal(account.getBytes(StandardCharsets.UTF_8), aad(DELETE))));
+        locations.remove(account);
+        searchRemoved(account);
+        // The old record and the tombstone itself
+        garbage += 2;
+        changed(account);
+        return true;
+    }
+
+    // Adds the accounts not already in the vault and returns how many that
+    // was; the first of any repeated name wins. Records are sealed in chunks
+    // on executor, outside the lock, then committed with one write and one
+    // force. Passwords are left for the caller to wipe.
+    public int putAll(List<String> accounts, List<char[]> passwords, ExecutorService executor)
+            throws IOException, GeneralSecurityException, InterruptedException {
+        List<Integer> fresh = new ArrayList<>();
+        synchronized (this) {
+            checkOpen();
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < accounts.size(); i++) {
+                String account = accounts.get(i);
+                if (!locations.containsKey(account) && seen.add(account))
+                    fresh.add(i);
+            }
+        }
+
+        byte[] aad = aad(RECORD);
+        List<Future<byte[][]>> parts = new ArrayList<>();
+        byte[][] sealed = new byte[fresh.size()][];
+        try {
+            for (int start = 0; start < fresh.size(); start += PUT_CHUNK) {
+                List<Integer> chunk = fresh.subList(start, Math.min(start + PUT_CHUNK, fresh.size()));
+                parts.add(executor.submit(() -> {
+                    byte[][] out = new byte[chunk.size()][];
+                    for (int i = 0; i < out.length; i++) {
+                        int index = chunk.get(i);
+                        byte[] name = accounts.get(index).getBytes(StandardCharsets.UTF_8);
+                        if (name.length > 0xffff)
+                            throw new IllegalArgumentException("Account name too long");
+                        byte[] plain = plainRecord(name, passwords.get(index));
+                        out[i] = crypto.seal(plain, aad);
+                        Arrays.fill(plain, (byte) 0);
+                    }
+                    return out;
+                }));
+            }
+            for (int p = 0; p < parts.size(); p++) {
+                byte[][] part = await(parts.get(p));
+                System.arraycopy(part, 0, sealed, p * PUT_CHUNK, part.length);
+            }
+        } finally {
+            for (Future<byte[][]> part : parts)
+                part.cancel(true);
+        }
+
+        synchronized (this) {
+            checkOpen();
+            // Skip names added by someone else while sealing
+            List<String> names = new ArrayList<>();
+            List<byte[]> frames = new ArrayList<>();
+            for (int i = 0; i < sealed.length; i++) {
+                String account = accounts.get(fresh.get(i));
+                if (!locations.containsKey(account)) {
+                    names.add(account);
+                    frames.add(sealed[i]);
+                }
+            }
+            long[] offsets = append(RECORD, frames);
+            for (int i = 0; i < names.size(); i++) {
+                locations.put(names.get(i), offsets[i] << 24 | frames.get(i).length);
+                searchAdded(names.get(i));
+                changed(names.get(i));
+            }
+            return names.size();
+        }
+    }
+
+    // The result of a task run for this package, with its checked exceptions
+    // rethrown as they were
+    static <T> T await(Future<T> task) throws IOException, GeneralSecurityException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof GeneralSecurityException)
+                throw (GeneralSecurityException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // Writes frames at the end of the log in one go and forces them to disk.
+    // Returns the offsets of their sealed bytes.
+    private long[] append(byte type, List<byte[]> sealed) throws IOException {
+        long[] offsets = new long[sealed.size()];
+        if (offsets.length == 0)
+            return offsets;
+        int size = 0;
+        for (byte[] s : sealed)
+            size += FRAME_HEADER + s.length;
+        ByteBuffer frames = ByteBuffer.allocate(size);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = end + frames.position() + FRAME_HEADER;
+            frames.put(type).putInt(sealed.get(i).length).put(sealed.get(i));
+        }
+        frames.flip();
+        syncRename();
+        long position = end;
+        try {
+            while (frames.hasRemaining())
+                position += channel.write(frames, position);
+            channel.force(true);
+        } catch (IOException e) {
+            // Drop the partial frame so the next one does not follow it
+            try {
+                channel.truncate(end);
+            } catch (IOException ignored) {
+            }
+            throw e;
+        }
+        end = position;
+        tail += offsets.length;
+        return offsets;
+    }
+
+    private void changed(String account) {
+        if (changed != null) {
+            changed.add(account);
+        } else if (garbage + tail > COMPACT_MIN && garbage + tail > locations.size()) {
+            changed = new HashSet<>();
+            background.execute(this::compact);
+        }
+    }
+
+    // Rewrites the live records into a new file. The copy runs without the
+    // lock from a snapshot of the index; frames appended meanwhile are then
+    // copied unchanged after the new INDEX and the file swapped in, under
+    // the lock.
+    private void compact() {
+        Path tmp = tempPath(path);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            TreeMap<String, Long> live;
+            ByteBuffer source;
+            long snapshotEnd;
+            int garbageAtSnapshot, tailAtSnapshot;
+            synchronized (this) {
+                if (closed)
+                    return;
+                if (mapped.capacity() < end)
+                    mapped = map(channel, end);
+                live = new TreeMap<>(locations);
+                source = mapped;
+                snapshotEnd = end;
+                garbageAtSnapshot = garbage;
+                tailAtSnapshot = tail;
+                changed.clear();
+            }
+
+            TreeMap<String, Long> compacted = new TreeMap<>();
+            long delta = rewrite(out, live, source, compacted) - snapshotEnd;
+
+            synchronized (this) {
+                if (closed)
+                    return;
+                for (long done = 0; done < end - snapshotEnd;)
+                    done += channel.transferTo(snapshotEnd + done, end - snapshotEnd - done, out);
+                out.force(true);
+                for (String account : changed) {
+                    Long location = locations.get(account);
+                    if (location == null)
+                        compacted.remove(account);
+                    else
+                        compacted.put(account, location + (delta << 24));
+                }
+                channel.close();
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                renamed = true;
+                locations = compacted;
+                end += delta;
+                garbage -= garbageAtSnapshot;
+                tail -= tailAtSnapshot;
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                mapped = map(channel, end);
+                syncRename();
+            }
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            // The state matches whichever file is at path; compaction is
+            // tried again after more changes
+            synchronized (this) {
+                if (!closed)
+                    reopen();
+            }
+        } finally {
+            synchronized (this) {
+                changed = null;
+            }
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Until the rename is on disk a crash could bring back the old file, so
+    // commits made to the new one would be lost
+    private void syncRename() throws IOException {
+        if (renamed) {
+            syncDirectory(path);
+            renamed = false;
+        }
+    }
+
+    private static void syncDirectory(Path path) throws IOException {
+        try (FileChannel directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory to force it
+        }
+    }
+
+    private void reopen() {
+        try {
+            if (!channel.isOpen())
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            mapped = map(channel, end);
+        } catch (IOException e) {
+            closed = true;
+            crypto.close();
+        }
+    }
+
+    // Writes header, verifier, the live records copied from source and an
+    // INDEX to out, filling locations with where the records went. Returns
+    // the length written.
+    private long rewrite(FileChannel out, TreeMap<String, Long> live, ByteBuffer source,
+            Map<String, Long> locations) throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        indexOut.writeInt(live.size());
+        DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)));
+        file.write(header);
+        file.write(crypto.seal(new byte[0], header));
+        byte[] sealed = new byte[0];
+        for (Map.Entry<String, Long> e : live.entrySet()) {
+            int length = (int) (e.getValue() & 0xffffff);
+            if (sealed.length != length)
+                sealed = new byte[length];
+            source.get((int) (e.getValue() >>> 24), sealed);
+            long offset = file.size() + FRAME_HEADER;
+            writeFrame(file, RECORD, sealed);
+            byte[] account = e.getKey().getBytes(StandardCharsets.UTF_8);
+            indexOut.writeShort(account.length);
+            indexOut.write(account);
+            indexOut.writeLong(offset);
+            indexOut.writeInt(length);
+            locations.put(e.getKey(), offset << 24 | length);
+        }
+        writeFrame(file, INDEX, crypto.seal(index.toByteArray(), aad(INDEX)));
+        file.flush();
+        return file.size();
+    }
+
+    private static void writeFrame(DataOutputStream out, byte type, byte[] sealed) throws IOException {
+        out.writeByte(type);
+        out.writeInt(sealed.length);
+        out.write(sealed);
+    }
+
+    // u16 account length, account, password, all UTF-8. Refuses a record
+    // that would seal to more than MAX_RECORD, which unlock would reject.
+    static byte[] plainRecord(byte[] name, char[] password) {
+        byte[] secret = VaultCrypto.utf8(password);
+        if (2L + name.length + secret.length + VaultCrypto.OVERHEAD > MAX_RECORD) {
+            Arrays.fill(secret, (byte) 0);
+            throw new IllegalArgumentException("Password too long");
+        }
+        byte[] plain = ByteBuffer.allocate(2 + name.length + secret.length)
+                .putShort((short) name.length).put(name).put(secret).array();
+        Arrays.fill(secret, (byte) 0);
+        return plain;
+    }
+
+    // Appends an INDEX if the log has unindexed frames, so the next unlock
+    // need not replay them, then wipes the keys
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        background.shutdown();
+        try {
+            if (channel != null && channel.isOpen() && tail > 0)
+                append(INDEX, List.of(crypto.seal(indexPlain(), aad(INDEX))));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        } finally {
+            locations.clear();
+            search = null;
+            searchChanged = null;
+            mapped = null;
+            crypto.close();
+            if (channel != null)
+                channel.close();
+        }
+    }
+
+    private byte[] indexPlain() throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(index);
+        out.writeInt(locations.size());
+        for (Map.Entry<String, Long> e : locations.entrySet()) {
+            byte[] account = e.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(account.length);
+            out.write(account);
+            out.writeLong(e.getValue() >>> 24);
+            out.writeInt((int) (e.getValue() & 0xffffff));
+        }
+        return index.toByteArray();
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long length) throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("Vault file too large");
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+
+    private static Path tempPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    private byte[] aad(byte type) {
+        byte[] aad = Arrays.copyOf(header, header.length + 1);
+        aad[header.length] = type;
+        return aad;
+    }
+
+    private static byte[] salt(byte[] header) {
+        return Arrays.copyOfRange(header, HEADER_BYTES - SALT_BYTES, HEADER_BYTES);
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Vault is locked");
+    }
+}
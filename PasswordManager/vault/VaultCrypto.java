@@ -0,0 +1,187 @@
+package vault;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+// The key for one unlocked vault. The master password goes through scrypt
+// once at unlock; HMAC-SHA256 turns the result into the record key for
+// AES-256-GCM, and the result is wiped. Sealing a record costs one AES-GCM
+// pass with a fresh random 96-bit nonce, so it stays cheap however large the
+// vault is. close() zeroes the key.
+public final class VaultCrypto implements AutoCloseable {
+    public static final int NONCE_BYTES = 12;
+    public static final int TAG_BYTES = 16;
+    // Bytes a sealed value adds to its plaintext
+    public static final int OVERHEAD = NONCE_BYTES + TAG_BYTES;
+
+    // scrypt cost: 2^logN iterations over 128 * r * 2^logN bytes, p lanes.
+    // Parameters come from file headers, so the memory is capped as well as
+    // each field, or a damaged header could ask for gigabytes. The cap is
+    // four times the default, which is what vaults and exports are written
+    // with, and fits in a default heap.
+    public static final class Kdf {
+        public static final Kdf DEFAULT = new Kdf(16, 8, 1); // 64 MiB
+        public static final long MAX_MEMORY = 256L << 20;
+
+        public final int logN, r, p;
+
+        public Kdf(int logN, int r, int p) {
+            if (logN < 1 || logN > 24 || r < 1 || r > 64 || p < 1 || p > 16)
+                throw new IllegalArgumentException("Key derivation parameters out of range");
+            if (128L * r << logN > MAX_MEMORY)
+                throw new IllegalArgumentException("Key derivation needs more than 256 MiB");
+            this.logN = logN;
+            this.r = r;
+            this.p = p;
+        }
+    }
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final RawKey recordKey;
+
+    private VaultCrypto(byte[] recordKey) {
+        this.recordKey = new RawKey(recordKey, "AES");
+    }
+
+    // Runs the KDF; password is left for the caller to wipe
+    public static VaultCrypto derive(char[] password, byte[] salt, Kdf kdf) throws GeneralSecurityException {
+        byte[] secret = utf8(password);
+        byte[] master = null;
+        try {
+            master = Scrypt.derive(secret, salt, 1 << kdf.logN, kdf.r, kdf.p, 32);
+            RawKey masterKey = new RawKey(master, "HmacSHA256");
+            byte[] recordKey = hmac(masterKey, "vault record key");
+            masterKey.destroy();
+            try {
+                return new VaultCrypto(recordKey);
+            } finally {
+                Arrays.fill(recordKey, (byte) 0);
+            }
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+            if (master != null)
+                Arrays.fill(master, (byte) 0);
+        }
+    }
+
+    public static byte[] randomBytes(int n) {
+        byte[] bytes = new byte[n];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    // nonce | ciphertext | tag, with aad authenticated but not stored
+    public byte[] seal(byte[] plaintext, byte[] aad) throws GeneralSecurityException {
+        byte[] out = new byte[OVERHEAD + plaintext.length];
+        byte[] nonce = randomBytes(NONCE_BYTES);
+        System.arraycopy(nonce, 0, out, 0, NONCE_BYTES);
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.ENCRYPT_MODE, recordKey, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+        if (aad != null)
+            cipher.updateAAD(aad);
+        cipher.doFinal(plaintext, 0, plaintext.length, out, NONCE_BYTES);
+        return out;
+    }
+
+    // Throws AEADBadTagException if the value, its aad or the key is wrong
+    public byte[] open(ByteBuffer sealed, byte[] aad) throws GeneralSecurityException {
+        if (sealed.remaining() < OVERHEAD)
+            throw new AEADBadTagException("Sealed value too short");
+        byte[] nonce = new byte[NONCE_BYTES];
+        sealed.get(nonce);
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.DECRYPT_MODE, recordKey, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+        if (aad != null)
+            cipher.updateAAD(aad);
+        byte[] out = new byte[sealed.remaining() - TAG_BYTES];
+        cipher.doFinal(sealed, ByteBuffer.wrap(out));
+        return out;
+    }
+
+    public byte[] open(byte[] sealed, byte[] aad) throws GeneralSecurityException {
+        return open(ByteBuffer.wrap(sealed), aad);
+    }
+
+    public void close() {
+        recordKey.destroy();
+    }
+
+    // UTF-8 bytes of chars without going through a String
+    public static byte[] utf8(char[] chars) {
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(chars));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        if (encoded.hasArray())
+            Arrays.fill(encoded.array(), (byte) 0);
+        return bytes;
+    }
+
+    public static char[] chars(byte[] utf8, int offset, int length) {
+        CharBuffer decoded = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(utf8, offset, length));
+        char[] chars = new char[decoded.remaining()];
+        decoded.get(chars);
+        if (decoded.hasArray())
+            Arrays.fill(decoded.array(), '\0');
+        return chars;
+    }
+
+    private static byte[] hmac(SecretKey key, String label) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+        return mac.doFinal(label.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A key whose bytes this class owns and can wipe, unlike SecretKeySpec
+    // which keeps its own copy. Providers still expand it into their own
+    // key schedule while a cipher is initialised with it.
+    private static final class RawKey implements SecretKey {
+        private final byte[] key;
+        private final String algorithm;
+        private volatile boolean destroyed;
+
+        RawKey(byte[] key, String algorithm) {
+            this.key = key.clone();
+            this.algorithm = algorithm;
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public String getFormat() {
+            return "RAW";
+        }
+
+        public byte[] getEncoded() {
+            if (destroyed)
+                throw new IllegalStateException("Vault is locked");
+            return key.clone();
+        }
+
+        public void destroy() {
+            Arrays.fill(key, (byte) 0);
+            destroyed = true;
+        }
+
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+    }
+}
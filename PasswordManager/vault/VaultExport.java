@@ -0,0 +1,126 @@
+package vault;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntConsumer;
+
+// Writes a vault to a portable file that another vault can import, sealed
+// under its own passphrase rather than the vault's master password. The
+// layout follows the vault's own: a header with the KDF parameters and salt,
+// a verifier sealed over the header, one sealed record per account and a
+// sealed trailer holding the record count, so a file cut short is noticed.
+//
+// Accounts are exported in chunks: each chunk is decrypted from the vault
+// and sealed again on the executor, and the chunks are written in order as
+// they finish, with a few in flight at a time, so memory stays bounded
+// however large the vault is. The vault stays usable meanwhile; an account
+// removed before its chunk is sealed is left out, and the trailer counts the
+// records actually written.
+public class VaultExport {
+    static final byte[] MAGIC = { 'P', 'M', 'X', '1' };
+    static final int VERSION = 1;
+    static final int SALT_BYTES = 16;
+    static final int HEADER_BYTES = MAGIC.length + 4 + SALT_BYTES;
+    static final byte RECORD = 'R', END = 'E';
+    static final int MAX_RECORD = 1 << 20;
+    private static final int CHUNK = 1024;
+
+    // Returns the number of accounts written; progress, if given, receives
+    // the number of accounts gone through so far. passphrase is left for the caller to wipe.
+    public static int export(Vault vault, Path file, char[] passphrase, VaultCrypto.Kdf kdf,
+            ExecutorService executor, IntConsumer progress)
+            throws IOException, GeneralSecurityException, InterruptedException {
+        byte[] header = ByteBuffer.allocate(HEADER_BYTES).put(MAGIC)
+                .put((byte) VERSION).put((byte) kdf.logN).put((byte) kdf.r).put((byte) kdf.p)
+                .put(VaultCrypto.randomBytes(SALT_BYTES)).array();
+        List<String> accounts = vault.accounts();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int written = 0;
+        try (VaultCrypto crypto = VaultCrypto.derive(passphrase, salt(header), kdf);
+                FileOutputStream stream = new FileOutputStream(tmp.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.write(header);
+            out.write(crypto.seal(new byte[0], header));
+            byte[] recordAad = aad(header, RECORD);
+            ArrayDeque<Future<Part>> inFlight = new ArrayDeque<>();
+            int window = 2 * Runtime.getRuntime().availableProcessors(), done = 0;
+            try {
+                for (int start = 0; start < accounts.size() || !inFlight.isEmpty();) {
+                    while (start < accounts.size() && inFlight.size() < window) {
+                        List<String> chunk = accounts.subList(start, Math.min(start + CHUNK, accounts.size()));
+                        inFlight.add(executor.submit(() -> sealChunk(vault, crypto, chunk, recordAad)));
+                        start += chunk.size();
+                    }
+                    Part part = Vault.await(inFlight.poll());
+                    out.write(part.frames);
+                    written += part.count;
+                    done = Math.min(accounts.size(), done + CHUNK);
+                    if (progress != null)
+                        progress.accept(done);
+                }
+            } finally {
+                for (Future<Part> part : inFlight)
+                    part.cancel(true);
+            }
+            byte[] trailer = crypto.seal(ByteBuffer.allocate(4).putInt(written).array(), aad(header, END));
+            out.writeByte(END);
+            out.writeInt(trailer.length);
+            out.write(trailer);
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException | GeneralSecurityException | InterruptedException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    // The framed records of one chunk and how many there are
+    private static final class Part {
+        final byte[] frames;
+        final int count;
+
+        Part(byte[] frames, int count) {
+            this.frames = frames;
+            this.count = count;
+        }
+    }
+
+    // Seals the accounts of one chunk that still exist
+    private static Part sealChunk(Vault vault, VaultCrypto crypto, List<String> chunk, byte[] aad)
+            throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream(chunk.size() * 96);
+        DataOutputStream out = new DataOutputStream(frames);
+        int count = 0;
+        for (String account : chunk) {
+            char[] password = vault.password(account);
+            if (password == null)
+                continue;
+            byte[] plain = Vault.plainRecord(account.getBytes(StandardCharsets.UTF_8), password);
+            Arrays.fill(password, '\0');
+            byte[] sealed = crypto.seal(plain, aad);
+            Arrays.fill(plain, (byte) 0);
+            out.writeByte(RECORD);
+            out.writeInt(sealed.length);
+            out.write(sealed);
+            count++;
+        }
+        return new Part(frames.toByteArray(), count);
+    }
+
+    static byte[] aad(byte[] header, byte type) {
+        byte[] aad = Arrays.copyOf(header, header.length + 1);
+        aad[header.length] = type;
+        return aad;
+    }
+
+    static byte[] salt(byte[] header) {
+        return Arrays.copyOfRange(header, HEADER_BYTES - SALT_BYTES, HEADER_BYTES);
+    }
+}
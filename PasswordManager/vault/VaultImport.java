@@ -0,0 +1,413 @@
+package vault;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.crypto.AEADBadTagException;
+
+// Reads password dumps for Vault.putAll: CSV as written by browsers and most
+// password managers, JSON (a Bitwarden export or an array of objects with
+// the same fields as the CSV columns) and files written by VaultExport.
+//
+// CSV is read in one streaming pass with quoted fields allowed to span
+// lines, so the file cannot be split between threads; parsing is cheap next
+// to sealing, which putAll spreads over the executor. Passwords from CSV and
+// portable files stay in char arrays that wipe() clears; JSON passwords pass
+// through Strings on the way.
+public class VaultImport {
+    private static final char BOM = '\uFEFF';
+    private static final List<String> NAME = List.of("name", "title", "account");
+    private static final List<String> URL = List.of("url", "login_uri", "uri", "website", "origin");
+    private static final List<String> USERNAME = List.of("username", "login_username", "user", "email", "login");
+    private static final List<String> PASSWORD = List.of("password", "login_password", "pass");
+
+    // Accounts in first-seen order with their passwords, plus row counts
+    public static class Batch {
+        private final List<String> accounts = new ArrayList<>();
+        private final List<char[]> passwords = new ArrayList<>();
+        private final Set<String> seen = new HashSet<>();
+        private int rows = 0, skipped = 0;
+
+        public List<String> accounts() {
+            return Collections.unmodifiableList(accounts);
+        }
+
+        public List<char[]> passwords() {
+            return Collections.unmodifiableList(passwords);
+        }
+
+        public int count() {
+            return accounts.size();
+        }
+
+        // Rows with an account and a password, including repeats
+        public int rows() {
+            return rows;
+        }
+
+        public int duplicates() {
+            return rows - accounts.size();
+        }
+
+        // Rows without a password or anything to name the account by
+        public int skipped() {
+            return skipped;
+        }
+
+        public void wipe() {
+            for (char[] password : passwords)
+                Arrays.fill(password, '\0');
+        }
+
+        // Takes password; a repeated account keeps its first password
+        void add(String account, char[] password) {
+            rows++;
+            if (seen.add(account)) {
+                accounts.add(account);
+                passwords.add(password);
+            } else {
+                Arrays.fill(password, '\0');
+            }
+        }
+    }
+
+    // A pool for putAll and VaultExport: one thread per core, and a short
+    // queue that makes the submitting thread help out once it is full
+    public static ExecutorService newExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * 4),
+                r -> {
+                    Thread t = new Thread(r, "vault-import");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // Whether file was written by VaultExport and needs its passphrase
+    public static boolean isPortable(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return Arrays.equals(in.readNBytes(VaultExport.MAGIC.length), VaultExport.MAGIC);
+        }
+    }
+
+    // CSV or JSON, told apart by the first character
+    public static Batch parse(Path file) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            reader.mark(1);
+            if (reader.read() != BOM)
+                reader.reset();
+            reader.mark(1 << 16);
+            int c;
+            do {
+                c = reader.read();
+            } while (c != -1 && Character.isWhitespace(c));
+            reader.reset();
+            if (c == '[' || c == '{') {
+                // From the reader, which is past any byte order mark
+                StringWriter text = new StringWriter();
+                reader.transferTo(text);
+                return parseJson(text.toString());
+            }
+            return parseCsv(reader);
+        }
+    }
+
+    // Throws AEADBadTagException if the passphrase is wrong or the file was
+    // altered, and IOException if it is cut short
+    public static Batch parsePortable(Path file, char[] passphrase) throws IOException, GeneralSecurityException {
+        Batch batch = new Batch();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            byte[] header = new byte[VaultExport.HEADER_BYTES];
+            in.readFully(header);
+            ByteBuffer fields = ByteBuffer.wrap(header, VaultExport.MAGIC.length, 4);
+            if (!Arrays.equals(Arrays.copyOf(header, VaultExport.MAGIC.length), VaultExport.MAGIC))
+                throw new IOException("Not a vault export");
+            if (fields.get() != VaultExport.VERSION)
+                throw new IOException("Unsupported export version");
+            VaultCrypto.Kdf kdf;
+            try {
+                kdf = new VaultCrypto.Kdf(fields.get(), fields.get(), fields.get());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Damaged export header");
+            }
+            byte[] verifier = new byte[VaultCrypto.OVERHEAD];
+            in.readFully(verifier);
+            try (VaultCrypto crypto = VaultCrypto.derive(passphrase, VaultExport.salt(header), kdf)) {
+                crypto.open(verifier, header);
+                byte[] recordAad = VaultExport.aad(header, VaultExport.RECORD);
+                int records = 0;
+                while (true) {
+                    int type = in.read();
+                    if (type == -1)
+                        throw new IOException("Export file is truncated");
+                    int length = in.readInt();
+                    if (length < VaultCrypto.OVERHEAD || length > VaultExport.MAX_RECORD)
+                        throw new IOException("Corrupt export record");
+                    byte[] sealed = new byte[length];
+                    in.readFully(sealed);
+                    if (type == VaultExport.END) {
+                        byte[] count = crypto.open(sealed, VaultExport.aad(header, VaultExport.END));
+                        if (count.length != 4 || ByteBuffer.wrap(count).getInt() != records || in.read() != -1)
+                            throw new AEADBadTagException("Export record count does not match");
+                        return batch;
+                    }
+                    if (type != VaultExport.RECORD)
+                        throw new IOException("Corrupt export record");
+                    byte[] plain = crypto.open(sealed, recordAad);
+                    try {
+                        int nameLength = (plain[0] & 0xff) << 8 | plain[1] & 0xff;
+                        batch.add(new String(plain, 2, nameLength, StandardCharsets.UTF_8),
+                                VaultCrypto.chars(plain, 2 + nameLength, plain.length - 2 - nameLength));
+                    } finally {
+                        Arrays.fill(plain, (byte) 0);
+                    }
+                    records++;
+                }
+            }
+        } catch (EOFException e) {
+            batch.wipe();
+            throw new IOException("Export file is truncated");
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            batch.wipe();
+            throw e;
+        }
+    }
+
+    // A header row names the columns; without one, the first two columns
+    // are the account and the password
+    static Batch parseCsv(Reader reader) throws IOException {
+        Batch batch = new Batch();
+        CsvReader csv = new CsvReader(reader);
+        try {
+            List<char[]> row = csv.next();
+            if (row == null)
+                return batch;
+            String[] header = new String[row.size()];
+            for (int i = 0; i < header.length; i++)
+                header[i] = new String(row.get(i)).trim().toLowerCase(Locale.ROOT);
+            int name = column(header, NAME), url = column(header, URL), username = column(header, USERNAME),
+                    password = column(header, PASSWORD);
+            if (password < 0) {
+                if (row.size() != 2)
+                    throw new IOException("No password column in the header");
+                name = 0;
+                password = 1;
+                url = username = -1;
+                addRow(batch, row, name, url, username, password);
+            } else {
+                wipe(row);
+            }
+            while ((row = csv.next()) != null)
+                addRow(batch, row, name, url, username, password);
+            return batch;
+        } catch (IOException | RuntimeException e) {
+            batch.wipe();
+            throw e;
+        } finally {
+            csv.wipe();
+        }
+    }
+
+    private static void addRow(Batch batch, List<char[]> row, int name, int url, int username, int password) {
+        try {
+            if (row.size() == 1 && row.get(0).length == 0)
+                return; // blank line
+            char[] secret = field(row, password);
+            String account = account(string(row, name), string(row, url), string(row, username));
+            if (secret == null || secret.length == 0 || account == null) {
+                batch.skipped++;
+                return;
+            }
+            batch.add(account, secret.clone());
+        } finally {
+            wipe(row);
+        }
+    }
+
+    static Batch parseJson(String text) throws IOException {
+        Object root;
+        try {
+            root = Json.parse(text);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid JSON: " + e.getMessage());
+        }
+        if (root instanceof Map && ((Map<?, ?>) root).get("items") instanceof List)
+            root = ((Map<?, ?>) root).get("items");
+        if (!(root instanceof List))
+            throw new IOException("Expected a list of entries");
+        Batch batch = new Batch();
+        for (Object item : (List<?>) root) {
+            if (!(item instanceof Map)) {
+                batch.skipped++;
+                continue;
+            }
+            Map<String, Object> entry = lowerKeys((Map<?, ?>) item);
+            // Bitwarden keeps the credentials in a nested login object
+            Map<String, Object> login = entry.get("login") instanceof Map ? lowerKeys((Map<?, ?>) entry.get("login"))
+                    : entry;
+            String url = text(login, URL);
+            if (url == null && login.get("uris") instanceof List) {
+                for (Object uri : (List<?>) login.get("uris")) {
+                    if (uri instanceof Map && ((Map<?, ?>) uri).get("uri") instanceof String) {
+                        url = (String) ((Map<?, ?>) uri).get("uri");
+                        break;
+                    }
+                }
+            }
+            String password = text(login, PASSWORD);
+            String account = account(text(entry, NAME), url, text(login, USERNAME));
+            if (password == null || password.isEmpty() || account == null) {
+                batch.skipped++;
+                continue;
+            }
+            batch.add(account, password.toCharArray());
+        }
+        return batch;
+    }
+
+    // The name if there is one, else the site's host, with the username
+    // appended so several logins for one site stay apart
+    static String account(String name, String url, String username) {
+        String account = name != null && !name.isBlank() ? name.strip() : host(url);
+        if (username != null && !username.isBlank()) {
+            username = username.strip();
+            if (account == null)
+                return username;
+            if (!account.equals(username))
+                account += " (" + username + ")";
+        }
+        return account;
+    }
+
+    private static String host(String url) {
+        if (url == null || url.isBlank())
+            return null;
+        url = url.strip();
+        try {
+            String host = new URI(url.contains("://") ? url : "https://" + url).getHost();
+            if (host != null)
+                return host.startsWith("www.") ? host.substring(4) : host;
+        } catch (Exception e) {
+            // fall through to the text as written
+        }
+        return url;
+    }
+
+    private static int column(String[] header, List<String> aliases) {
+        for (String alias : aliases) {
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].equals(alias))
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    private static char[] field(List<char[]> row, int i) {
+        return i >= 0 && i < row.size() ? row.get(i) : null;
+    }
+
+    private static String string(List<char[]> row, int i) {
+        char[] field = field(row, i);
+        return field == null ? null : new String(field);
+    }
+
+    private static void wipe(List<char[]> row) {
+        for (char[] field : row)
+            Arrays.fill(field, '\0');
+    }
+
+    private static Map<String, Object> lowerKeys(Map<?, ?> map) {
+        Map<String, Object> lower = new HashMap<>();
+        for (Map.Entry<?, ?> e : map.entrySet())
+            lower.putIfAbsent(String.valueOf(e.getKey()).toLowerCase(Locale.ROOT), e.getValue());
+        return lower;
+    }
+
+    private static String text(Map<String, Object> entry, List<String> aliases) {
+        for (String alias : aliases) {
+            if (entry.get(alias) instanceof String)
+                return (String) entry.get(alias);
+        }
+        return null;
+    }
+
+    // RFC 4180 records: fields separated by commas, quoted fields may hold
+    // commas, newlines and doubled quotes. Fields are copied out of one
+    // reused buffer, which wipe() clears.
+    private static class CsvReader {
+        private final Reader reader;
+        private char[] field = new char[256];
+        private int length;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        // The next record, or null at the end of input
+        List<char[]> next() throws IOException {
+            int c = reader.read();
+            if (c == -1)
+                return null;
+            List<char[]> row = new ArrayList<>();
+            length = 0;
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1)
+                        throw new IOException("Unterminated quoted field");
+                    if (c == '"') {
+                        c = reader.read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    append((char) c);
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    row.add(take());
+                } else if (c == '\n' || c == -1) {
+                    row.add(take());
+                    return row;
+                } else if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n')
+                        reader.reset();
+                    row.add(take());
+                    return row;
+                } else {
+                    append((char) c);
+                }
+                c = reader.read();
+            }
+        }
+
+        void wipe() {
+            Arrays.fill(field, '\0');
+        }
+
+        private void append(char c) {
+            if (length == field.length) {
+                char[] grown = Arrays.copyOf(field, length * 2);
+                Arrays.fill(field, '\0');
+                field = grown;
+            }
+            field[length++] = c;
+        }
+
+        private char[] take() {
+            char[] value = Arrays.copyOf(field, length);
+            Arrays.fill(field, 0, length, '\0');
+            length = 0;
+            return value;
+        }
+    }
+}